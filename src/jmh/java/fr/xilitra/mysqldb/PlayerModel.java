@@ -0,0 +1,9 @@
+package fr.xilitra.mysqldb;
+
+public class PlayerModel extends SQLModel {
+
+    public PlayerModel() {
+        super(SyntheticResultSet.TABLE, "id");
+    }
+
+}
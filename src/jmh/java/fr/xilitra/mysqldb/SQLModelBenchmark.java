@@ -0,0 +1,103 @@
+package fr.xilitra.mysqldb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQLModelBenchmark {
+
+    @Param({"1", "100", "10000", "1000000"})
+    public int rows;
+
+    private ArrayList<PlayerModel> models;
+    private ArrayList<TypedPlayerModel> typedModels;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        this.models = this.populateAll();
+        this.typedModels = this.populateAllTyped();
+    }
+
+    private ArrayList<PlayerModel> populateAll() throws SQLException {
+        ArrayList<PlayerModel> models = new ArrayList<>(this.rows);
+        ResultSet resultSet = SyntheticResultSet.create(this.rows);
+        while (resultSet.next()) {
+            PlayerModel model = new PlayerModel();
+            model.populate(resultSet);
+            models.add(model);
+        }
+        return models;
+    }
+
+    private ArrayList<TypedPlayerModel> populateAllTyped() throws SQLException {
+        ArrayList<TypedPlayerModel> models = new ArrayList<>(this.rows);
+        ResultSet resultSet = SyntheticResultSet.create(this.rows);
+        SQLModelMapper.Plan plan = SQLModelMapper.of(TypedPlayerModel.class).plan(resultSet.getMetaData());
+        while (resultSet.next()) {
+            TypedPlayerModel model = new TypedPlayerModel();
+            model.populate(resultSet, plan);
+            models.add(model);
+        }
+        return models;
+    }
+
+    @Benchmark
+    public ArrayList<PlayerModel> populate() throws SQLException {
+        return this.populateAll();
+    }
+
+    @Benchmark
+    public ArrayList<TypedPlayerModel> populateTyped() throws SQLException {
+        return this.populateAllTyped();
+    }
+
+    @Benchmark
+    public void getInt(Blackhole blackhole) {
+        for (PlayerModel model : this.models) {
+            blackhole.consume(model.getInt("id"));
+        }
+    }
+
+    @Benchmark
+    public void getIntTyped(Blackhole blackhole) {
+        for (TypedPlayerModel model : this.typedModels) {
+            blackhole.consume(model.getInt("id"));
+        }
+    }
+
+    @Benchmark
+    public void getLong(Blackhole blackhole) {
+        for (PlayerModel model : this.models) {
+            blackhole.consume(model.getLong("coins"));
+        }
+    }
+
+    @Benchmark
+    public void getDouble(Blackhole blackhole) {
+        for (PlayerModel model : this.models) {
+            blackhole.consume(model.getDouble("ratio"));
+        }
+    }
+
+}
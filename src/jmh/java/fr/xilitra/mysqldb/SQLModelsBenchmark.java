@@ -0,0 +1,82 @@
+package fr.xilitra.mysqldb;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQLModelsBenchmark {
+
+    @Param({"1", "100", "10000", "1000000"})
+    public int rows;
+
+    private SQLConnection connection;
+    private SQLModels<PlayerModel> players;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:bench-" + this.rows + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+
+        this.connection = new SQLConnection("localhost", "0", "bench", "sa", "");
+        this.connection.initConnection(config);
+        this.connection.execute("CREATE TABLE " + SyntheticResultSet.TABLE + " (id INT PRIMARY KEY,"
+                + " name VARCHAR(64), coins BIGINT, ratio DOUBLE, guild VARCHAR(64))");
+
+        List<Object[]> batch = new ArrayList<>();
+        for (int id = 1; id <= this.rows; id++) {
+            batch.add(new Object[]{id, "player-" + id, id * 1000L, id / 3.0, id % 10 == 0 ? null : "guild-" + (id % 64)});
+            if (batch.size() == 10000 || id == this.rows) {
+                this.connection.executeBatch("INSERT INTO " + SyntheticResultSet.TABLE
+                        + " (id, name, coins, ratio, guild) VALUES (?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+
+        MySqlDB.register("bench", this.connection);
+        MySqlDB.selectDB("bench");
+        this.players = new SQLModels<>(PlayerModel.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.connection.closeConnection();
+    }
+
+    @Benchmark
+    public ArrayList<PlayerModel> getAll() {
+        return this.players.get(null);
+    }
+
+    @Benchmark
+    public ArrayList<PlayerModel> getWhere() {
+        return this.players.get("WHERE coins >= ?", 0L);
+    }
+
+    @Benchmark
+    public SQLRowSet query() {
+        return this.connection.query("SELECT * FROM " + SyntheticResultSet.TABLE);
+    }
+
+}
@@ -0,0 +1,66 @@
+package fr.xilitra.mysqldb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SQLRowSetBenchmark {
+
+    @Param({"1", "100", "10000", "1000000"})
+    public int rows;
+
+    private SQLRowSet rowSet;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.rowSet = new SQLRowSet(SyntheticResultSet.create(this.rows));
+    }
+
+    @Benchmark
+    public SQLRowSet construct() {
+        return new SQLRowSet(SyntheticResultSet.create(this.rows));
+    }
+
+    @Benchmark
+    public void scanInt(Blackhole blackhole) {
+        this.rowSet.beforeFirst();
+        while (this.rowSet.next()) {
+            blackhole.consume(this.rowSet.getInt("id"));
+        }
+    }
+
+    @Benchmark
+    public void scanLong(Blackhole blackhole) {
+        this.rowSet.beforeFirst();
+        while (this.rowSet.next()) {
+            blackhole.consume(this.rowSet.getLong("coins"));
+        }
+    }
+
+    @Benchmark
+    public void scanString(Blackhole blackhole) {
+        this.rowSet.beforeFirst();
+        while (this.rowSet.next()) {
+            blackhole.consume(this.rowSet.getString("guild"));
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package fr.xilitra.mysqldb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+final class SyntheticResultSet implements InvocationHandler {
+
+    static final String TABLE = "players";
+    static final String[] COLUMNS = {"id", "name", "coins", "ratio", "guild"};
+    private static final int[] TYPES = {Types.INTEGER, Types.VARCHAR, Types.BIGINT, Types.DOUBLE, Types.VARCHAR};
+
+    private final int rows;
+    private int row = 0;
+    private boolean wasNull = false;
+
+    private SyntheticResultSet(int rows) {
+        this.rows = rows;
+    }
+
+    static ResultSet create(int rows) {
+        return (ResultSet) Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, new SyntheticResultSet(rows));
+    }
+
+    private Object value(int column) {
+        switch (column) {
+            case 1:
+                return this.row;
+            case 2:
+                return "player-" + this.row;
+            case 3:
+                return this.row * 1000L;
+            case 4:
+                return this.row / 3.0;
+            default:
+                return this.row % 10 == 0 ? null : "guild-" + (this.row % 64);
+        }
+    }
+
+    private int columnIndex(Object column) {
+        if (column instanceof Integer) {
+            return (Integer) column;
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + column);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "next":
+                return ++this.row <= this.rows;
+            case "first":
+                this.row = 1;
+                return this.rows > 0;
+            case "wasNull":
+                return this.wasNull;
+            case "getMetaData":
+                return Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(),
+                        new Class<?>[]{ResultSetMetaData.class}, SyntheticResultSet::metaData);
+            case "getObject":
+            case "getString":
+            case "getInt":
+            case "getLong":
+            case "getDouble":
+                Object value = this.value(this.columnIndex(args[0]));
+                this.wasNull = value == null;
+                return convert(method.getName(), value);
+            case "close":
+                return null;
+            case "isClosed":
+                return this.row > this.rows;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static Object convert(String getter, Object value) {
+        switch (getter) {
+            case "getString":
+                return value == null ? null : value.toString();
+            case "getInt":
+                return value == null ? 0 : ((Number) value).intValue();
+            case "getLong":
+                return value == null ? 0L : ((Number) value).longValue();
+            case "getDouble":
+                return value == null ? 0D : ((Number) value).doubleValue();
+            default:
+                return value;
+        }
+    }
+
+    private static Object metaData(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getColumnCount":
+                return COLUMNS.length;
+            case "getColumnName":
+            case "getColumnLabel":
+                return COLUMNS[(Integer) args[0] - 1];
+            case "getColumnType":
+                return TYPES[(Integer) args[0] - 1];
+            case "getTableName":
+                return TABLE;
+            case "isSigned":
+                return true;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package fr.xilitra.mysqldb;
+
+public class TypedPlayerModel extends SQLModel {
+
+    @SQLColumn
+    private int id;
+
+    @SQLColumn
+    private String name;
+
+    @SQLColumn
+    private long coins;
+
+    @SQLColumn
+    private double ratio;
+
+    @SQLColumn
+    private String guild;
+
+    public TypedPlayerModel() {
+        super(SyntheticResultSet.TABLE, "id");
+    }
+
+}
@@ -2,34 +2,123 @@ package fr.xilitra.mysqldb;
 
 import fr.xilitra.mysqldb.exception.DBException;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class MySqlDB {
 
-    private static HashMap<String, SQLConnection> connections= new HashMap<>();
-    private static SQLConnection mainDBConnection;
+    // Reads never lock, the rare writes below are serialized on the class
+    private static final ConcurrentHashMap<String, SQLConnection> connections = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, SQLFailover> failovers = new ConcurrentHashMap<>();
+    private static volatile String mainDBName;
+    private static volatile SQLConnection mainDBConnection;
 
     public static void setupMySqlDb(String name, SQLConnection sqlConnection) {
 
         SQLConnection connection = sqlConnection;
         connection.initConnectionMysql();
-        connections.put(name, connection);    }
+        register(name, connection);
+    }
 
     public static void setupMariaDb(String name, SQLConnection sqlConnection){
         SQLConnection connection = sqlConnection;
         connection.initConnectionMariaDB();
+        register(name, connection);
+    }
+
+    public static void setupMySqlReplica(String name, SQLConnection replica) throws DBException {
+        SQLConnection primary = connections.get(name);
+        if (primary == null) {
+            throw new DBException();
+        }
+        replica.initConnectionMysql();
+        primary.addReplica(replica);
+    }
+
+    public static void setupMariaDbReplica(String name, SQLConnection replica) throws DBException {
+        SQLConnection primary = connections.get(name);
+        if (primary == null) {
+            throw new DBException();
+        }
+        replica.initConnectionMariaDB();
+        primary.addReplica(replica);
+    }
+
+    public static SQLFailover setupMySqlStandby(String name, SQLConnection standby) throws DBException {
+        SQLConnection primary = connections.get(name);
+        if (primary == null) {
+            throw new DBException();
+        }
+        standby.initConnectionMysql();
+        return addStandby(name, primary, standby);
+    }
+
+    public static SQLFailover setupMariaDbStandby(String name, SQLConnection standby) throws DBException {
+        SQLConnection primary = connections.get(name);
+        if (primary == null) {
+            throw new DBException();
+        }
+        standby.initConnectionMariaDB();
+        return addStandby(name, primary, standby);
+    }
+
+    private static synchronized SQLFailover addStandby(String name, SQLConnection primary, SQLConnection standby) {
+        SQLFailover previous = failovers.get(name);
+        if (previous != null) {
+            previous.stop();
+        }
+        SQLFailover failover = new SQLFailover(name, primary, standby);
+        failover.setCheckPeriod(5, TimeUnit.SECONDS);
+        failovers.put(name, failover);
+        return failover;
+    }
+
+    public static SQLFailover getFailover(String name) {
+        return failovers.get(name);
+    }
+
+    public static SQLConnection getDB(String name) {
+        return connections.get(name);
+    }
+
+    static synchronized void register(String name, SQLConnection connection) {
         connections.put(name, connection);
+        if (name.equals(mainDBName)) {
+            mainDBConnection = connection;
+        }
+        Scheduler.resizePermits();
+    }
+
+    static synchronized void swap(String name, SQLConnection from, SQLConnection to) {
+        // Callers resolving the name move to the other connection on their next call, models bound to a shard follow
+        // from through handOver
+        if (!connections.replace(name, from, to)) {
+            return;
+        }
+        if (name.equals(mainDBName)) {
+            mainDBConnection = to;
+        }
+        from.handOver(to);
+    }
+
+    static int getMaximumPoolSize() {
+        int size = 0;
+        for (SQLConnection connection : connections.values()) {
+            size += connection.getMaximumPoolSize();
+        }
+        return size;
     }
 
     public static SQLConnection getDB() {
         return mainDBConnection;
     }
 
-    public static void selectDB(String name) throws DBException {
-        if(!connections.containsKey(name)){
+    public static synchronized void selectDB(String name) throws DBException {
+        SQLConnection connection = connections.get(name);
+        if (connection == null) {
             throw new DBException();
         }
-
-        mainDBConnection =  connections.get(name);
+        mainDBName = name;
+        mainDBConnection = connection;
     }
 }
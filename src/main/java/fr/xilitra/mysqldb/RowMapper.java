@@ -0,0 +1,9 @@
+package fr.xilitra.mysqldb;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public interface RowMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+}
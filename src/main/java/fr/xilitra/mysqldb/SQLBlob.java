@@ -0,0 +1,183 @@
+package fr.xilitra.mysqldb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class SQLBlob implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream stream;
+    private ReadableByteChannel channel;
+
+    SQLBlob(InputStream stream) {
+        this.stream = stream;
+    }
+
+    // Reads the column of the current row, the blob is only valid until the result set moves or closes
+    public static SQLBlob of(ResultSet resultSet, String column) throws SQLException {
+        InputStream stream = resultSet.getBinaryStream(column);
+        return stream != null ? new SQLBlob(stream) : null;
+    }
+
+    public static SQLBlob of(ResultSet resultSet, int column) throws SQLException {
+        InputStream stream = resultSet.getBinaryStream(column);
+        return stream != null ? new SQLBlob(stream) : null;
+    }
+
+    public InputStream getInputStream() {
+        return this.stream;
+    }
+
+    public ReadableByteChannel getChannel() {
+        if (this.channel == null) {
+            this.channel = Channels.newChannel(this.stream);
+        }
+        return this.channel;
+    }
+
+    // Fills the buffer up to its limit, returns -1 once the blob is exhausted
+    public int read(ByteBuffer buffer) throws IOException {
+        ReadableByteChannel channel = this.getChannel();
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    public long transferTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = this.stream.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    public long transferTo(WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+        while (this.read(buffer) > 0) {
+            // Buffer casts keep the Java 8 signatures when compiled on a newer JDK without --release
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                total += out.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.stream.close();
+    }
+
+    static SQLBlob chunked(SQLConnection connection, String table, String column, String keyColumn, Object key, int chunkSize) {
+        String query = "SELECT SUBSTRING(" + column + ", ?, ?) FROM " + table + " WHERE " + keyColumn + " = ?";
+        return new SQLBlob(new ChunkedInputStream(connection, query, key, Math.max(1, chunkSize)));
+    }
+
+    // Pulls the value one SUBSTRING at a time, the heap only ever holds one chunk of it
+    private static class ChunkedInputStream extends InputStream {
+
+        private final SQLConnection connection;
+        private final String query;
+        private final Object key;
+        private final byte[] chunk;
+        private long position = 1;
+        private int length = 0;
+        private int offset = 0;
+        private boolean last = false;
+
+        private ChunkedInputStream(SQLConnection connection, String query, Object key, int chunkSize) {
+            this.connection = connection;
+            this.query = query;
+            this.key = key;
+            this.chunk = new byte[chunkSize];
+        }
+
+        private boolean fill() throws IOException {
+            if (this.offset < this.length) {
+                return true;
+            }
+            if (this.last) {
+                return false;
+            }
+            boolean[] fetched = {false};
+            IOException[] failure = {null};
+            this.length = 0;
+            this.offset = 0;
+            this.connection.query(this.query, resultSet -> {
+                try {
+                    fetched[0] = true;
+                    InputStream in = resultSet.next() ? resultSet.getBinaryStream(1) : null;
+                    if (in == null) {
+                        return;
+                    }
+                    try {
+                        int read;
+                        while (this.length < this.chunk.length
+                                && (read = in.read(this.chunk, this.length, this.chunk.length - this.length)) >= 0) {
+                            this.length += read;
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (SQLException | IOException exception) {
+                    failure[0] = exception instanceof IOException ? (IOException) exception : new IOException(exception);
+                }
+            }, this.position, this.chunk.length, this.key);
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (!fetched[0]) {
+                throw new IOException("Cannot read chunk at " + this.position + " of " + this.query);
+            }
+            this.position += this.length;
+            this.last = this.length < this.chunk.length;
+            return this.length > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return this.fill() ? this.chunk[this.offset++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!this.fill()) {
+                return -1;
+            }
+            int read = Math.min(length, this.length - this.offset);
+            System.arraycopy(this.chunk, this.offset, buffer, offset, read);
+            this.offset += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return this.length - this.offset;
+        }
+
+    }
+
+}
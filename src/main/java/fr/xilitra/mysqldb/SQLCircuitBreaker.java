@@ -0,0 +1,171 @@
+package fr.xilitra.mysqldb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+public class SQLCircuitBreaker {
+
+    // Trials run here, never on a caller's thread or the shared Scheduler pool
+    private static final ExecutorService trials = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "SQLCircuitBreaker-trial");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final Logger logs = Logger.getLogger("SQLCircuitBreaker");
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt = 0;
+    private volatile int failureThreshold = 5;
+    private volatile long openNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile BooleanSupplier trial = null;
+    private final AtomicBoolean trialRunning = new AtomicBoolean();
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    SQLCircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    // While open, callers fail at once instead of waiting the whole pool connectionTimeout
+    public boolean allowRequest() {
+        State state = this.state.get();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        // After the open period the server is tested once, every caller keeps failing fast until the test passes.
+        // Without a trial the test is a single caller let through
+        if (state == State.OPEN && System.nanoTime() - this.openedAt >= this.openNanos
+                && this.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            if (this.trial == null) {
+                return true;
+            }
+            this.runTrial();
+        }
+        this.rejected.incrementAndGet();
+        return false;
+    }
+
+    // A bounded check of the server, such as SQLConnection's probe connection, run instead of a caller's pool wait
+    void setTrial(BooleanSupplier trial) {
+        this.trial = trial;
+    }
+
+    private void runTrial() {
+        BooleanSupplier trial = this.trial;
+        if (trial == null || !this.trialRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            trials.execute(() -> {
+                boolean passed = false;
+                try {
+                    passed = trial.getAsBoolean();
+                } finally {
+                    // Released before the outcome lands, the next OPEN -> HALF_OPEN move can start a trial again
+                    this.trialRunning.set(false);
+                    if (passed) {
+                        this.recordSuccess();
+                    } else {
+                        this.trip();
+                    }
+                }
+            });
+        } catch (RuntimeException exception) {
+            this.trialRunning.set(false);
+            this.trip();
+        }
+    }
+
+    private void trip() {
+        State state = this.state.get();
+        if (state != State.OPEN && this.state.compareAndSet(state, State.OPEN)) {
+            this.openedAt = System.nanoTime();
+            this.opened.incrementAndGet();
+            this.logs.warning("Circuit of " + this.name + " opened, the server failed its trial");
+        } else if (state == State.OPEN) {
+            this.openedAt = System.nanoTime();
+        }
+    }
+
+    public void recordSuccess() {
+        this.consecutiveFailures.set(0);
+        if (this.state.get() != State.CLOSED && this.state.getAndSet(State.CLOSED) != State.CLOSED) {
+            this.logs.info("Circuit of " + this.name + " closed");
+        }
+    }
+
+    public void recordFailure() {
+        int failures = this.consecutiveFailures.incrementAndGet();
+        State state = this.state.get();
+        // Each caller until the threshold would wait the whole pool timeout, the first failure is checked at once
+        // and a server failing its trial opens the circuit for the callers that follow
+        if (state == State.CLOSED && failures == 1 && this.failureThreshold > 1) {
+            this.runTrial();
+        }
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= this.failureThreshold)) {
+            if (this.state.compareAndSet(state, State.OPEN)) {
+                this.openedAt = System.nanoTime();
+                this.opened.incrementAndGet();
+                this.logs.warning("Circuit of " + this.name + " opened after " + failures + " failures");
+            }
+        }
+    }
+
+    public void reset() {
+        this.consecutiveFailures.set(0);
+        this.state.set(State.CLOSED);
+    }
+
+    public State getState() {
+        return this.state.get();
+    }
+
+    public boolean isOpen() {
+        return this.state.get() != State.CLOSED;
+    }
+
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public long getOpenDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.openNanos);
+    }
+
+    public void setOpenDuration(long openDuration, TimeUnit timeUnit) {
+        this.openNanos = timeUnit.toNanos(openDuration);
+    }
+
+    public int getConsecutiveFailures() {
+        return this.consecutiveFailures.get();
+    }
+
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    public long getOpenedCount() {
+        return this.opened.get();
+    }
+
+}
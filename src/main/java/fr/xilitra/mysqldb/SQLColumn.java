@@ -0,0 +1,17 @@
+package fr.xilitra.mysqldb;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface SQLColumn {
+
+    // Column name, the field name when empty
+    String value() default "";
+
+    // Large BLOB/TEXT column left out of reads, fetched on first access
+    boolean lazy() default false;
+}
@@ -1,19 +1,69 @@
 package fr.xilitra.mysqldb;
 
+import com.mysql.cj.jdbc.JdbcStatement;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.mariadb.jdbc.MariaDbStatement;
 
+import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class SQLConnection {
 
+    // Bound of the probe that decides whether an open circuit closes again
+    private static final int TRIAL_TIMEOUT_SECONDS = 2;
+
     private HikariDataSource pool = null;
     private String host, port, database, username, password;
     private Logger logs = Logger.getLogger("SQLConnection");
+    private int streamFetchSize = Integer.MIN_VALUE;
+    private String jdbcUrl = null;
+    private boolean localInfile = false;
+    private TimeZone sessionTimeZone = TimeZone.getTimeZone("UTC");
+    private long bulkLoadChunkSize = 100000;
+    private volatile boolean insertReturning = false;
+    private SQLWriteBehind writeBehind = null;
+    private volatile SQLMicroBatcher microBatcher = null;
+    private volatile SQLQueryCache queryCache = null;
+    private SQLExecutor executor = null;
+    private int asyncWorkers = 0;
+    private int asyncQueueCapacity = 10000;
+    private SQLExecutor.OverflowPolicy asyncOverflowPolicy = SQLExecutor.OverflowPolicy.BLOCK;
+    private boolean virtualThreads = false;
+    private final SQLMetrics metrics = new SQLMetrics();
+    private final SQLCircuitBreaker circuitBreaker;
+    private SQLPoolProfile poolProfile = SQLPoolProfile.standard();
+    private volatile SQLReplicas replicas = null;
+    private volatile SQLConnection handedOverTo = null;
+    private volatile long readYourWritesNanos = 0;
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[]{Long.MIN_VALUE});
+    private final ThreadLocal<int[]> primarySession = ThreadLocal.withInitial(() -> new int[1]);
+    private final ThreadLocal<SQLTransaction> transaction = new ThreadLocal<>();
 
     public SQLConnection(String host, String port, String database, String username, String password) {
         this.host = host;
@@ -21,6 +71,8 @@ public class SQLConnection {
         this.database = database;
         this.username = username;
         this.password = password;
+        this.circuitBreaker = new SQLCircuitBreaker(host + ":" + port + "/" + database);
+        this.circuitBreaker.setTrial(() -> this.probe(TRIAL_TIMEOUT_SECONDS));
     }
 
     public void initConnectionMysql() {
@@ -31,16 +83,18 @@ public class SQLConnection {
             return;
         }
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://" + this.host + ":" + this.port + "/" + this.database
+        this.jdbcUrl = "jdbc:mysql://" + this.host + ":" + this.port + "/" + this.database
                         + "?verifyServerCertificate=false"
                         + "&useSSL=false"
-                        + "&serverTimezone=UTC"
+                        + "&serverTimezone=" + this.sessionTimeZone.getID()
                         + "&characterEncoding=UTF-8"
                         + "&jdbcCompliantTruncation=false"
-                //+ "&allowMultiQueries=true"
-        );
+                        //+ "&allowMultiQueries=true"
+                        + (this.localInfile ? "&allowLoadLocalInfile=true" : "");
+        config.setJdbcUrl(this.jdbcUrl);
         config.setUsername(this.username);
         config.setPassword(this.password);
+        config.addDataSourceProperty("useServerPrepStmts", true);
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
@@ -51,13 +105,12 @@ public class SQLConnection {
         config.addDataSourceProperty("elideSetAutoCommits", true);
         config.addDataSourceProperty("maintainTimeStats", false);
 
-        // Avoid maxLifeTime disconnection
-        config.setMinimumIdle(0);
-        config.setConnectionTimeout(30000);
-        config.setIdleTimeout(35000);
-        config.setMaxLifetime(45000);
+        // Integer.MIN_VALUE is the only fetch size that makes Connector/J stream rows
+        this.streamFetchSize = Integer.MIN_VALUE;
 
-        this.pool = new HikariDataSource(config);
+        this.poolProfile.apply(config);
+
+        this.initConnection(config);
         this.logs.info("Connected to MySQL with HikariCP!");
     }
 
@@ -71,24 +124,543 @@ public class SQLConnection {
         HikariConfig config = new HikariConfig();
 
         config.setDataSourceClassName("org.mariadb.jdbc.MariaDbDataSource");
-        config.addDataSourceProperty("url", "jdbc:mariadb://" + this.host + ":" + this.port + "/" + this.database);
+        // MariaDbDataSource only exposes url/user/password setters, statement caching goes through the URL
+        this.jdbcUrl = "jdbc:mariadb://" + this.host + ":" + this.port + "/" + this.database
+                + "?useServerPrepStmts=true"
+                + "&cachePrepStmts=true"
+                + "&prepStmtCacheSize=250"
+                + "&prepStmtCacheSqlLimit=2048"
+                + "&allowLocalInfile=" + this.localInfile;
+        config.addDataSourceProperty("url", this.jdbcUrl);
         config.addDataSourceProperty("user", this.username);
         config.addDataSourceProperty("password",this.password);
 
-        config.setMinimumIdle(0);
-        config.setConnectionTimeout(30000);
-        config.setIdleTimeout(35000);
-        config.setMaxLifetime(45000);
+        // Connector/J 2.x sends timestamps in the JVM zone unless told otherwise
+        this.sessionTimeZone = TimeZone.getDefault();
 
-        this.pool = new HikariDataSource(config);
+        // MariaDB streams with any positive fetch size, Integer.MIN_VALUE would fetch row by row
+        this.streamFetchSize = 1000;
+
+        this.poolProfile.apply(config);
+
+        this.initConnection(config);
+        // MariaDB 10.5+ returns the upserted row with INSERT ... RETURNING, upsert() reads it back on older servers
+        this.insertReturning = this.isServerVersionAtLeast(10, 5);
         this.logs.info("Connected to MySQL with HikariCP!");
     }
 
+    void initConnection(HikariConfig config) {
+        // Pools configured by hand are probed through their own URL
+        if (config.getJdbcUrl() != null) {
+            this.jdbcUrl = config.getJdbcUrl();
+        }
+        config.setMetricsTrackerFactory(this.metrics);
+        this.pool = new HikariDataSource(config);
+        this.startExecutor();
+        if (this.poolProfile.isWarmUp()) {
+            this.warmUp(this.poolProfile.getHotStatements());
+        }
+    }
+
+    public void setPoolProfile(SQLPoolProfile poolProfile) {
+        this.poolProfile = poolProfile;
+        if (this.pool != null) {
+            this.logs.warning("Pool profile changed on a running pool, it applies on the next init");
+        }
+    }
+
+    // Zone the driver converts timestamps to, values the library formats itself must use it too
+    public TimeZone getSessionTimeZone() {
+        return this.sessionTimeZone;
+    }
+
+    int getMaximumPoolSize() {
+        HikariDataSource pool = this.pool;
+        return pool != null ? pool.getMaximumPoolSize() : 0;
+    }
+
+    public SQLPoolProfile getPoolProfile() {
+        return this.poolProfile;
+    }
+
+    public int warmUp(Collection<String> statements) {
+        return this.warmUp(statements, this.poolProfile.getWarmUpTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int warmUp(Collection<String> statements, long timeout, TimeUnit timeUnit) {
+        HikariDataSource pool = this.pool;
+        if (pool == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long deadline = start + timeUnit.toNanos(timeout);
+        int target = Math.max(1, pool.getMinimumIdle());
+        ArrayList<Connection> connections = new ArrayList<>(target);
+        int prepared = 0;
+        long connectionTimeout = pool.getConnectionTimeout();
+        try {
+            for (int i = 0; i < target; i++) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    this.logs.warning("Warm-up timed out after " + connections.size() + " of " + target + " connections");
+                    break;
+                }
+                // A down server must not hold the init for the whole connectionTimeout, 250ms is the HikariCP minimum
+                pool.setConnectionTimeout(Math.max(250, Math.min(connectionTimeout, remaining)));
+                connections.add(pool.getConnection());
+            }
+            // With server-side statement caching, a closed statement stays prepared on its connection
+            for (Connection conn : connections) {
+                for (String statement : statements) {
+                    if (System.nanoTime() - deadline > 0) {
+                        break;
+                    }
+                    try {
+                        conn.prepareStatement(statement).close();
+                        prepared++;
+                    } catch (SQLException exception) {
+                        this.logs.warning("Cannot prepare hot statement " + statement + ": " + exception.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException exception) {
+            this.logs.warning("Warm-up stopped after " + connections.size() + " connections: " + exception.getMessage());
+        } finally {
+            pool.setConnectionTimeout(connectionTimeout);
+            for (Connection conn : connections) {
+                try {
+                    conn.close();
+                } catch (SQLException exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }
+        this.metrics.recordWarmUp(connections.size(), prepared, System.nanoTime() - start);
+        this.logs.info("Pool warmed up: " + connections.size() + " connections, " + prepared + " statements prepared");
+        return connections.size();
+    }
+
+    public void configureAsync(int workers, int queueCapacity, SQLExecutor.OverflowPolicy overflowPolicy) {
+        this.asyncWorkers = workers;
+        this.asyncQueueCapacity = queueCapacity;
+        this.asyncOverflowPolicy = overflowPolicy;
+        if (this.pool != null) {
+            this.startExecutor();
+        }
+    }
+
+    public boolean setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            this.logs.warning("Virtual threads are not available on this JVM, keeping platform threads");
+            return false;
+        }
+        this.virtualThreads = virtualThreads;
+        if (this.pool != null) {
+            this.startExecutor();
+        }
+        return true;
+    }
+
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    private void startExecutor() {
+        SQLExecutor previous = this.executor;
+        int workers = this.asyncWorkers > 0 ? this.asyncWorkers : this.pool.getMaximumPoolSize();
+        String name = "SQLConnection-" + this.database;
+        if (this.virtualThreads) {
+            // Workers beyond the pool size would only park inside getConnection, beyond the carriers they would pin
+            // every carrier in the driver's synchronized socket reads
+            workers = Math.max(1, Math.min(Math.min(workers, this.pool.getMaximumPoolSize()), Scheduler.carrierParallelism()));
+            this.executor = new SQLExecutor(workers, this.asyncQueueCapacity, this.asyncOverflowPolicy,
+                    VirtualThreads.newThreadFactory(name + "-virtual"));
+        } else {
+            this.executor = new SQLExecutor(name, workers, this.asyncQueueCapacity, this.asyncOverflowPolicy);
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    synchronized void addReplica(SQLConnection replica) {
+        if (this.replicas == null) {
+            this.replicas = new SQLReplicas();
+        }
+        this.replicas.add(replica);
+    }
+
+    public SQLReplicas getReplicas() {
+        return this.replicas;
+    }
+
+    public void setReadYourWritesWindow(long window, TimeUnit timeUnit) {
+        this.readYourWritesNanos = timeUnit.toNanos(window);
+    }
+
+    public <T> T inTransaction(TransactionCallback<T> work) throws Exception {
+        return this.inTransaction(Connection.TRANSACTION_NONE, work);
+    }
+
+    public <T> T inTransaction(int isolationLevel, TransactionCallback<T> work) throws Exception {
+        SQLTransaction current = this.transaction.get();
+        if (current != null) {
+            return work.run(current);
+        }
+        try (Connection conn = this.getPoolConnection()) {
+            int previousIsolation = conn.getTransactionIsolation();
+            boolean autoCommit = conn.getAutoCommit();
+            SQLTransaction transaction = new SQLTransaction(this, conn,
+                    isolationLevel != Connection.TRANSACTION_NONE ? isolationLevel : previousIsolation);
+            if (transaction.getIsolationLevel() != previousIsolation) {
+                conn.setTransactionIsolation(transaction.getIsolationLevel());
+            }
+            conn.setAutoCommit(false);
+            this.markWrite(null);
+            this.transaction.set(transaction);
+            try {
+                T result = work.run(transaction);
+                // The work was thrown away, the caller must not take its result for a success
+                if (transaction.isRollbackOnly()) {
+                    throw transaction.rollbackException();
+                }
+                conn.commit();
+                transaction.onCommit();
+                return result;
+            } catch (Exception exception) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackException) {
+                    exception.addSuppressed(rollbackException);
+                }
+                transaction.onRollback();
+                throw exception;
+            } finally {
+                this.transaction.remove();
+                try {
+                    conn.setAutoCommit(autoCommit);
+                    if (transaction.getIsolationLevel() != previousIsolation) {
+                        conn.setTransactionIsolation(previousIsolation);
+                    }
+                } catch (SQLException exception) {
+                    this.logs.warning("Cannot restore connection state after transaction: " + exception.getMessage());
+                }
+            }
+        }
+    }
+
+    public <T> CompletableFuture<T> inTransactionAsync(final int isolationLevel, final TransactionCallback<T> work, final Executor completionExecutor) {
+        return this.supplyAsync(() -> this.inTransaction(isolationLevel, work), completionExecutor);
+    }
+
+    public <T> CompletableFuture<T> inTransactionAsync(final int isolationLevel, final TransactionCallback<T> work) {
+        return this.inTransactionAsync(isolationLevel, work, null);
+    }
+
+    public <T> CompletableFuture<T> inTransactionAsync(final TransactionCallback<T> work) {
+        return this.inTransactionAsync(Connection.TRANSACTION_NONE, work, null);
+    }
+
+    public SQLTransaction getTransaction() {
+        return this.transaction.get();
+    }
+
+    public boolean isInTransaction() {
+        return this.transaction.get() != null;
+    }
+
+    private void failed(String query, long start, SQLException exception) {
+        this.metrics.record(query, System.nanoTime() - start, 0, true);
+        SQLTransaction transaction = this.transaction.get();
+        if (transaction != null) {
+            transaction.setRollbackOnly(exception);
+        }
+    }
+
+    public <T> T onPrimary(Callable<T> session) throws Exception {
+        int[] depth = this.primarySession.get();
+        depth[0]++;
+        try {
+            return session.call();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    private SQLConnection readTarget(String query) {
+        SQLReplicas replicas = this.replicas;
+        if (replicas == null || this.primarySession.get()[0] > 0 || this.transaction.get() != null) {
+            return null;
+        }
+        if (this.readYourWritesNanos > 0 && System.nanoTime() - this.lastWrite.get()[0] < this.readYourWritesNanos) {
+            return null;
+        }
+        String trimmed = query.trim();
+        if (!trimmed.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return null;
+        }
+        String upper = trimmed.toUpperCase();
+        if (upper.contains(" FOR UPDATE") || upper.contains(" LOCK IN SHARE MODE") || upper.contains(" FOR SHARE")) {
+            return null;
+        }
+        return replicas.pick();
+    }
+
+    private void markWrite(String query) {
+        if (this.replicas != null && this.readYourWritesNanos > 0) {
+            this.lastWrite.get()[0] = System.nanoTime();
+        }
+        if (query != null) {
+            this.invalidate(query);
+        }
+    }
+
+    void invalidate(String query) {
+        SQLQueryCache queryCache = this.queryCache;
+        if (queryCache == null) {
+            return;
+        }
+        // Readers that started before the write must not cache what they saw, the tables are invalidated again
+        // once the statement is done and, inside a transaction, after the commit
+        SQLTransaction transaction = this.transaction.get();
+        if (transaction != null) {
+            transaction.written(query);
+        }
+        queryCache.invalidate(query);
+    }
+
+    HikariPoolMXBean getPoolMXBean() {
+        HikariDataSource pool = this.pool;
+        return pool != null ? pool.getHikariPoolMXBean() : null;
+    }
+
+    // Read over a probe connection, a dead replica fails within the timeout instead of holding a pool wait
+    long getReplicationLag(int timeoutSeconds) throws SQLException {
+        try (Connection conn = this.openProbe(timeoutSeconds)) {
+            return SQLReplicas.readLag(conn);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.host + ":" + this.port + "/" + this.database;
+    }
+
+    public SQLMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public SQLExecutor getExecutor() {
+        return this.executor;
+    }
+
+    public SQLCircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    Connection getPoolConnection() throws SQLException {
+        if (!this.circuitBreaker.allowRequest()) {
+            throw new SQLTransientConnectionException("Circuit open for " + this + ", failing fast");
+        }
+        try {
+            Connection conn = this.pool.getConnection();
+            this.circuitBreaker.recordSuccess();
+            return conn;
+        } catch (SQLException exception) {
+            this.circuitBreaker.recordFailure();
+            throw exception;
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        SQLTransaction transaction = this.transaction.get();
+        return transaction != null ? transaction.getHandle() : this.getPoolConnection();
+    }
+
+    // Health probe, it goes through an open circuit and its outcome drives the breaker. It opens its own
+    // connection: a dead server fails within the probe timeout, not the pool connectionTimeout
+    boolean ping(int timeoutSeconds) {
+        if (this.jdbcUrl == null || !this.isConnected()) {
+            return false;
+        }
+        if (this.probe(timeoutSeconds)) {
+            this.circuitBreaker.recordSuccess();
+            return true;
+        }
+        this.circuitBreaker.recordFailure();
+        return false;
+    }
+
+    private boolean probe(int timeoutSeconds) {
+        if (this.jdbcUrl == null || !this.isConnected()) {
+            return false;
+        }
+        try (Connection conn = this.openProbe(timeoutSeconds)) {
+            return conn.isValid(timeoutSeconds);
+        } catch (SQLException exception) {
+            this.logs.warning("Health check of " + this + " failed: " + exception.getMessage());
+        }
+        return false;
+    }
+
+    private Connection openProbe(int timeoutSeconds) throws SQLException {
+        String jdbcUrl = this.jdbcUrl;
+        if (jdbcUrl == null) {
+            throw new SQLTransientConnectionException("No JDBC url for " + this);
+        }
+        Properties properties = new Properties();
+        if (this.username != null) {
+            properties.setProperty("user", this.username);
+        }
+        if (this.password != null) {
+            properties.setProperty("password", this.password);
+        }
+        String timeout = String.valueOf(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        properties.setProperty("connectTimeout", timeout);
+        properties.setProperty("socketTimeout", timeout);
+        return DriverManager.getConnection(jdbcUrl, properties);
+    }
+
+    void runAsync(Runnable task) {
+        this.runAsync(task, null);
+    }
+
+    void runAsync(Runnable task, Consumer<RejectedExecutionException> onDropped) {
+        // Work issued inside a transaction must see it, run it on the pinned connection right away
+        if (this.transaction.get() != null) {
+            task.run();
+            return;
+        }
+        SQLExecutor executor = this.executor;
+        if (executor != null) {
+            executor.submit(task, onDropped);
+        } else {
+            Scheduler.runTask(task);
+        }
+    }
+
     public boolean isConnected() {
         return this.pool != null && !this.pool.isClosed();
     }
 
+    public void enableWriteBehind(long period, TimeUnit timeUnit) {
+        if (this.writeBehind != null) {
+            return;
+        }
+        SQLWriteBehind writeBehind = new SQLWriteBehind(this);
+        writeBehind.start(period, timeUnit);
+        this.writeBehind = writeBehind;
+    }
+
+    // Returns the models whose buffered updates could not be written
+    public List<SQLModel> disableWriteBehind() {
+        SQLWriteBehind writeBehind = this.writeBehind;
+        this.writeBehind = null;
+        if (writeBehind != null) {
+            return writeBehind.stop();
+        }
+        return Collections.emptyList();
+    }
+
+    // Called by a failover once the name points to target: the buffered writes and the query cache follow the traffic
+    synchronized void handOver(SQLConnection target) {
+        // Set before the buffers move, a write racing the swap then lands on the target's buffers
+        target.handedOverTo = null;
+        this.handedOverTo = target;
+        SQLWriteBehind writeBehind = this.writeBehind;
+        if (writeBehind != null) {
+            this.writeBehind = null;
+            target.enableWriteBehind(writeBehind.getPeriodNanos(), TimeUnit.NANOSECONDS);
+            writeBehind.handOver(target.writeBehind);
+        }
+        SQLMicroBatcher microBatcher = this.microBatcher;
+        if (microBatcher != null) {
+            this.microBatcher = null;
+            if (target.microBatcher == null) {
+                target.enableMicroBatching(microBatcher.getWindowNanos(), TimeUnit.NANOSECONDS, microBatcher.getMaxStatements());
+            }
+            microBatcher.handOver(target.microBatcher);
+        }
+        // Rows cached by either side were read before the other server took the writes
+        SQLQueryCache queryCache = this.queryCache;
+        if (queryCache != null) {
+            this.queryCache = null;
+            queryCache.invalidateAll();
+        }
+        SQLQueryCache targetCache = target.queryCache;
+        if (targetCache != null) {
+            targetCache.invalidateAll();
+        } else if (queryCache != null) {
+            target.queryCache = queryCache;
+        }
+    }
+
+    // Models bound to a connection, such as sharded rows, hold it past a failover swap and follow it here
+    SQLConnection current() {
+        SQLConnection connection = this;
+        SQLConnection next;
+        while ((next = connection.handedOverTo) != null && next != this) {
+            connection = next;
+        }
+        return connection;
+    }
+
+    public SQLWriteBehind getWriteBehind() {
+        return this.writeBehind;
+    }
+
+    public synchronized void enableMicroBatching(long window, TimeUnit timeUnit, int maxStatements) {
+        this.disableMicroBatching();
+        SQLMicroBatcher microBatcher = new SQLMicroBatcher(this, maxStatements);
+        microBatcher.start(window, timeUnit);
+        this.microBatcher = microBatcher;
+    }
+
+    public synchronized void disableMicroBatching() {
+        SQLMicroBatcher microBatcher = this.microBatcher;
+        this.microBatcher = null;
+        if (microBatcher != null) {
+            microBatcher.stop();
+        }
+    }
+
+    public SQLMicroBatcher getMicroBatcher() {
+        return this.microBatcher;
+    }
+
+    public void enableQueryCache(long maxBytes, long ttl, TimeUnit timeUnit) {
+        this.queryCache = new SQLQueryCache(maxBytes, ttl, timeUnit);
+    }
+
+    public void disableQueryCache() {
+        this.queryCache = null;
+    }
+
+    public SQLQueryCache getQueryCache() {
+        return this.queryCache;
+    }
+
+    public void flush() {
+        if (this.writeBehind != null) {
+            this.writeBehind.flush();
+        }
+        SQLMicroBatcher microBatcher = this.microBatcher;
+        if (microBatcher != null) {
+            microBatcher.flush();
+        }
+    }
+
     public void closeConnection() {
+        this.disableWriteBehind();
+        this.disableMicroBatching();
+        this.disableQueryCache();
+        if (this.replicas != null) {
+            this.replicas.stop();
+        }
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor = null;
+        }
         this.pool.close();
         this.pool = null;
     }
@@ -110,18 +682,21 @@ public class SQLConnection {
         }
     }
 
-    private PreparedStatement prepareStatement(Connection conn, String query, Object... vars) {
-        try {
-            PreparedStatement ps = conn.prepareStatement(query);
-            int i = 0;
-            if (query.contains("?") && vars.length != 0) {
-                for (Object obj : vars) {
-                    i++;
-                    ps.setObject(i, obj);
-                }
+    private PreparedStatement bindStatement(Connection conn, String query, Object... vars) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(query);
+        int i = 0;
+        if (query.contains("?") && vars.length != 0) {
+            for (Object obj : vars) {
+                i++;
+                ps.setObject(i, obj);
             }
-            return ps;
+        }
+        return ps;
+    }
 
+    private PreparedStatement prepareStatement(Connection conn, String query, Object... vars) {
+        try {
+            return this.bindStatement(conn, query, vars);
         } catch (SQLException exception) {
             this.logs.severe("MySQL error: " + exception.getMessage());
         }
@@ -129,19 +704,131 @@ public class SQLConnection {
         return null;
     }
 
+    public int getStreamFetchSize() {
+        return this.streamFetchSize;
+    }
+
+    public void setStreamFetchSize(int streamFetchSize) {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    public boolean isLocalInfile() {
+        return this.localInfile;
+    }
+
+    // Must be set before initConnection, the server may then ask this client for local files
+    public void setLocalInfile(boolean localInfile) {
+        this.localInfile = localInfile;
+    }
+
+    public long getBulkLoadChunkSize() {
+        return this.bulkLoadChunkSize;
+    }
+
+    public void setBulkLoadChunkSize(long bulkLoadChunkSize) {
+        this.bulkLoadChunkSize = bulkLoadChunkSize;
+    }
+
+    private PreparedStatement prepareStreamingStatement(Connection conn, String query, Object... vars) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(this.streamFetchSize);
+        int i = 0;
+        if (query.contains("?") && vars.length != 0) {
+            for (Object obj : vars) {
+                i++;
+                ps.setObject(i, obj);
+            }
+        }
+        return ps;
+    }
+
+    public <T> SQLCursor<T> cursor(final String query, final RowMapper<T> mapper, final Object... vars) {
+        SQLConnection replica = this.readTarget(query);
+        if (replica != null) {
+            return replica.cursor(query, mapper, vars);
+        }
+        Connection conn;
+        try {
+            conn = this.acquire();
+        } catch (SQLException exception) {
+            this.logs.severe("Error when getting pool connection !");
+            exception.printStackTrace();
+            return null;
+        }
+        PreparedStatement ps = null;
+        long start = System.nanoTime();
+        try {
+            ps = this.prepareStreamingStatement(conn, query, vars);
+            SQLCursor<T> cursor = new SQLCursor<>(conn, ps, ps.executeQuery(), mapper);
+            this.metrics.record(query, System.nanoTime() - start, -1, false);
+            return cursor;
+        } catch (SQLException e) {
+            this.failed(query, start, e);
+            this.logs.severe("MySQL error: " + e.getMessage());
+            e.printStackTrace();
+            this.closeRessources(null, ps);
+            try {
+                conn.close();
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    public <T> Stream<T> stream(final String query, final RowMapper<T> mapper, final Object... vars) {
+        SQLCursor<T> cursor = this.cursor(query, mapper, vars);
+        return cursor != null ? cursor.stream() : Stream.empty();
+    }
+
+    public Stream<HashMap<String, Object>> stream(final String query, final Object... vars) {
+        return this.stream(query, resultSet -> {
+            java.sql.ResultSetMetaData meta = resultSet.getMetaData();
+            HashMap<String, Object> row = new HashMap<>();
+            for (int i = 1; i <= meta.getColumnCount(); ++i) {
+                row.put(meta.getColumnName(i), resultSet.getObject(i));
+            }
+            return row;
+        }, vars);
+    }
+
+    public long streamBlobs(final String query, final String column, final Callback<SQLBlob> callback, final Object... vars) {
+        // Each blob is read from the streaming result set, it is only valid inside the callback
+        long rows = 0;
+        try (SQLCursor<SQLBlob> cursor = this.cursor(query, resultSet -> SQLBlob.of(resultSet, column), vars)) {
+            while (cursor != null && cursor.hasNext()) {
+                callback.run(cursor.next());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    public SQLBlob openBlob(final String table, final String column, final String keyColumn, final Object key, final int chunkSize) {
+        return SQLBlob.chunked(this, table, column, keyColumn, key, chunkSize);
+    }
+
     public void AsyncQuery(final String query, final Callback<SQLRowSet> callback, final Object... vars) {
-        Scheduler.runTask(() -> {
-            try (Connection conn = this.pool.getConnection()) {
+        SQLConnection replica = this.readTarget(query);
+        if (replica != null) {
+            replica.AsyncQuery(query, callback, vars);
+            return;
+        }
+        this.runAsync(() -> {
+            try (Connection conn = this.acquire()) {
+                long start = System.nanoTime();
                 try (PreparedStatement ps = this.prepareStatement(conn, query, vars)) {
                     assert ps != null;
                     try (ResultSet rs = ps.executeQuery()) {
                         SQLRowSet SQLRowSet = new SQLRowSet(rs);
                         this.closeRessources(rs, ps);
+                        this.metrics.record(query, System.nanoTime() - start, SQLRowSet.size(), false);
                         if (callback != null) {
                             callback.run(SQLRowSet);
                         }
                     }
                 } catch (SQLException e) {
+                    this.failed(query, start, e);
                     this.logs.severe("MySQL error: " + e.getMessage());
                     e.printStackTrace();
                 }
@@ -153,15 +840,31 @@ public class SQLConnection {
     }
 
     public SQLRowSet query(final String query, final Object... vars) {
-        try (Connection conn = this.pool.getConnection()) {
+        SQLQueryCache queryCache = this.queryCache;
+        // A transaction or a primary session must see its own uncommitted or just written rows
+        if (queryCache != null && this.transaction.get() == null && this.primarySession.get()[0] == 0) {
+            return queryCache.get(query, vars, () -> this.load(query, vars));
+        }
+        return this.load(query, vars);
+    }
+
+    private SQLRowSet load(final String query, final Object... vars) {
+        SQLConnection replica = this.readTarget(query);
+        if (replica != null) {
+            return replica.query(query, vars);
+        }
+        try (Connection conn = this.acquire()) {
+            long start = System.nanoTime();
             try (PreparedStatement ps = this.prepareStatement(conn, query, vars)) {
                 assert ps != null;
                 try (ResultSet rs = ps.executeQuery()) {
                     SQLRowSet SQLRowSet = new SQLRowSet(rs);
                     this.closeRessources(rs, ps);
+                    this.metrics.record(query, System.nanoTime() - start, SQLRowSet.size(), false);
                     return SQLRowSet;
                 }
             } catch (SQLException e) {
+                this.failed(query, start, e);
                 this.logs.severe("MySQL error: " + e.getMessage());
                 e.printStackTrace();
             }
@@ -173,14 +876,22 @@ public class SQLConnection {
     }
 
     public void query(final String query, final Callback<ResultSet> callback, final Object... vars) {
-        try (Connection conn = this.pool.getConnection()) {
+        SQLConnection replica = this.readTarget(query);
+        if (replica != null) {
+            replica.query(query, callback, vars);
+            return;
+        }
+        try (Connection conn = this.acquire()) {
+            long start = System.nanoTime();
             try (PreparedStatement ps = this.prepareStatement(conn, query, vars)) {
                 assert ps != null;
                 try (ResultSet rs = ps.executeQuery()) {
                     callback.run(rs);
                     this.closeRessources(rs, ps);
+                    this.metrics.record(query, System.nanoTime() - start, -1, false);
                 }
             } catch (SQLException e) {
+                this.failed(query, start, e);
                 this.logs.severe("MySQL error: " + e.getMessage());
                 e.printStackTrace();
             }
@@ -190,20 +901,108 @@ public class SQLConnection {
         }
     }
 
+    private boolean isServerVersionAtLeast(int major, int minor) {
+        try (Connection conn = this.acquire()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            int serverMajor = metaData.getDatabaseMajorVersion();
+            return serverMajor > major || (serverMajor == major && metaData.getDatabaseMinorVersion() >= minor);
+        } catch (SQLException exception) {
+            this.logs.warning("Cannot read the server version of " + this + ": " + exception.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isInsertReturning() {
+        return this.insertReturning;
+    }
+
+    public void setInsertReturning(boolean insertReturning) {
+        this.insertReturning = insertReturning;
+    }
+
+    public void upsert(final String upsertQuery, final String selectQuery, final Callback<ResultSet> callback,
+                       final Object[] upsertVars, final Object... selectVars) {
+        this.markWrite(upsertQuery);
+        if (this.insertReturning) {
+            String query = upsertQuery + " RETURNING *";
+            try (Connection conn = this.acquire()) {
+                long start = System.nanoTime();
+                try (PreparedStatement ps = this.bindStatement(conn, query, upsertVars);
+                     ResultSet rs = ps.executeQuery()) {
+                    callback.run(rs);
+                    this.metrics.record(query, System.nanoTime() - start, -1, false);
+                    this.invalidate(upsertQuery);
+                    return;
+                } catch (SQLException exception) {
+                    this.failed(query, start, exception);
+                    this.logs.severe("MySQL error: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            } catch (SQLException exception) {
+                this.logs.severe("Error when getting pool connection !");
+                exception.printStackTrace();
+            }
+            return;
+        }
+        // Same pinned connection and transaction for both statements, the read back cannot miss the row
+        try {
+            this.inTransaction(transaction -> {
+                long key = this.executeUpsert(upsertQuery, upsertVars);
+                // A single row is read back by the key LAST_INSERT_ID(pk) reported, which may not be the one it was given
+                this.query(selectQuery, callback, key > 0 && selectVars.length == 1 ? new Object[]{key} : selectVars);
+                return null;
+            });
+        } catch (Exception exception) {
+            this.logs.severe("MySQL error: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    private long executeUpsert(String query, Object[] vars) throws SQLException {
+        try (Connection conn = this.acquire()) {
+            long start = System.nanoTime();
+            try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < vars.length; i++) {
+                    ps.setObject(i + 1, vars[i]);
+                }
+                int updateCount = ps.executeUpdate();
+                this.metrics.record(query, System.nanoTime() - start, updateCount, false);
+                this.invalidate(query);
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            } catch (SQLException exception) {
+                this.failed(query, start, exception);
+                throw exception;
+            }
+        }
+    }
+
     public void AsyncExecuteCallback(final String query, final Callback<Integer> callback, final Object... vars) {
-        Scheduler.runTask(() -> {
-            try (Connection conn = this.pool.getConnection()) {
+        this.markWrite(query);
+        SQLMicroBatcher microBatcher = this.microBatcher;
+        if (microBatcher != null && this.transaction.get() == null) {
+            microBatcher.add(query, vars, callback, null, null);
+            return;
+        }
+        this.runAsync(() -> {
+            try (Connection conn = this.acquire()) {
+                long start = System.nanoTime();
                 try (PreparedStatement ps = this.prepareStatement(conn, query, vars)) {
                     assert ps != null;
                     ps.execute();
+                    int updateCount = ps.getUpdateCount();
                     this.closeRessources(null, ps);
+                    this.metrics.record(query, System.nanoTime() - start, updateCount, false);
+                    this.invalidate(query);
                     if (callback != null) {
-                        callback.run(-1);
+                        callback.run(updateCount);
                     }
                 } catch (SQLException exception) {
                     if (exception.getErrorCode() == 1060) {
                         return;
                     }
+                    this.failed(query, start, exception);
                     this.logs.severe("MySQL error: " + exception.getMessage());
                     exception.printStackTrace();
                 }
@@ -218,13 +1017,244 @@ public class SQLConnection {
         this.AsyncExecuteCallback(query, null, vars);
     }
 
+    public <T> CompletableFuture<T> supplyAsync(final Callable<T> task, final Executor completionExecutor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            this.runAsync(() -> {
+                T result;
+                try {
+                    result = task.call();
+                } catch (Throwable throwable) {
+                    this.complete(future, null, throwable, completionExecutor);
+                    return;
+                }
+                this.complete(future, result, null, completionExecutor);
+            }, exception -> this.complete(future, null, exception, completionExecutor));
+        } catch (RuntimeException exception) {
+            future.completeExceptionally(exception);
+        }
+        return future;
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(final Callable<T> task) {
+        return this.supplyAsync(task, null);
+    }
+
+    <T> void complete(CompletableFuture<T> future, T result, Throwable throwable, Executor completionExecutor) {
+        Runnable completion = () -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+            } else {
+                future.complete(result);
+            }
+        };
+        if (completionExecutor == null) {
+            completion.run();
+            return;
+        }
+        try {
+            completionExecutor.execute(completion);
+        } catch (RuntimeException exception) {
+            future.completeExceptionally(exception);
+        }
+    }
+
+    public CompletableFuture<SQLRowSet> queryAsync(final Executor completionExecutor, final String query, final Object... vars) {
+        SQLConnection replica = this.readTarget(query);
+        if (replica != null) {
+            return replica.queryAsync(completionExecutor, query, vars);
+        }
+        return this.supplyAsync(() -> {
+            try (Connection conn = this.acquire()) {
+                long start = System.nanoTime();
+                try (PreparedStatement ps = this.bindStatement(conn, query, vars);
+                     ResultSet rs = ps.executeQuery()) {
+                    SQLRowSet rowSet = new SQLRowSet(rs);
+                    this.metrics.record(query, System.nanoTime() - start, rowSet.size(), false);
+                    return rowSet;
+                } catch (SQLException exception) {
+                    this.failed(query, start, exception);
+                    throw exception;
+                }
+            }
+        }, completionExecutor);
+    }
+
+    public CompletableFuture<SQLRowSet> queryAsync(final String query, final Object... vars) {
+        return this.queryAsync(null, query, vars);
+    }
+
+    public CompletableFuture<Integer> executeAsync(final Executor completionExecutor, final String query, final Object... vars) {
+        this.markWrite(query);
+        SQLMicroBatcher microBatcher = this.microBatcher;
+        if (microBatcher != null && this.transaction.get() == null) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            microBatcher.add(query, vars, null, future, completionExecutor);
+            return future;
+        }
+        return this.supplyAsync(() -> {
+            try (Connection conn = this.acquire()) {
+                long start = System.nanoTime();
+                try (PreparedStatement ps = this.bindStatement(conn, query, vars)) {
+                    ps.execute();
+                    int updateCount = ps.getUpdateCount();
+                    this.metrics.record(query, System.nanoTime() - start, updateCount, false);
+                    this.invalidate(query);
+                    return updateCount;
+                } catch (SQLException exception) {
+                    this.failed(query, start, exception);
+                    throw exception;
+                }
+            }
+        }, completionExecutor);
+    }
+
+    public CompletableFuture<Integer> executeAsync(final String query, final Object... vars) {
+        return this.executeAsync(null, query, vars);
+    }
+
+    public int[] executeBatch(final String query, final List<Object[]> batch) {
+        Map<String, int[]> results = this.executeBatch(Collections.singletonMap(query, batch));
+        return results.containsKey(query) ? results.get(query) : new int[0];
+    }
+
+    public Map<String, int[]> executeBatch(final Map<String, List<Object[]>> batches) {
+        HashMap<String, int[]> results = new HashMap<>();
+        if (batches.isEmpty()) {
+            return results;
+        }
+        this.markWrite(null);
+        for (String query : batches.keySet()) {
+            this.invalidate(query);
+        }
+        try (Connection conn = this.acquire()) {
+            for (Map.Entry<String, List<Object[]>> entry : batches.entrySet()) {
+                long start = System.nanoTime();
+                try (PreparedStatement ps = conn.prepareStatement(entry.getKey())) {
+                    for (Object[] vars : entry.getValue()) {
+                        for (int i = 0; i < vars.length; i++) {
+                            ps.setObject(i + 1, vars[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    results.put(entry.getKey(), ps.executeBatch());
+                    this.metrics.record(entry.getKey(), System.nanoTime() - start, entry.getValue().size(), false);
+                    this.invalidate(entry.getKey());
+                } catch (SQLException exception) {
+                    this.failed(entry.getKey(), start, exception);
+                    this.logs.severe("MySQL error: " + exception.getMessage());
+                    exception.printStackTrace();
+                }
+            }
+        } catch (SQLException exception) {
+            this.logs.severe("Error when getting pool connection !");
+            exception.printStackTrace();
+        }
+        return results;
+    }
+
+    public List<Long> executeInsertBatch(final String query, final List<Object[]> batch) {
+        this.markWrite(query);
+        ArrayList<Long> keys = new ArrayList<>();
+        if (batch.isEmpty()) {
+            return keys;
+        }
+        try (Connection conn = this.acquire()) {
+            long start = System.nanoTime();
+            try (PreparedStatement ps = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+                for (Object[] vars : batch) {
+                    for (int i = 0; i < vars.length; i++) {
+                        ps.setObject(i + 1, vars[i]);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                this.metrics.record(query, System.nanoTime() - start, batch.size(), false);
+                this.invalidate(query);
+            } catch (SQLException exception) {
+                this.failed(query, start, exception);
+                this.logs.severe("MySQL error: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        } catch (SQLException exception) {
+            this.logs.severe("Error when getting pool connection !");
+            exception.printStackTrace();
+        }
+        return keys;
+    }
+
+    public long bulkLoad(final String table, final List<String> columns, final Stream<Object[]> rows) {
+        try (Stream<Object[]> stream = rows) {
+            return this.bulkLoad(table, columns, stream.iterator(), this.bulkLoadChunkSize);
+        }
+    }
+
+    public long bulkLoad(final String table, final List<String> columns, final Iterator<Object[]> rows) {
+        return this.bulkLoad(table, columns, rows, this.bulkLoadChunkSize);
+    }
+
+    public long bulkLoad(final String table, final List<String> columns, final Iterator<Object[]> rows, final long chunkSize) {
+        if (!this.localInfile) {
+            this.logs.severe("bulkLoad() needs setLocalInfile(true) before initConnection");
+            return 0;
+        }
+        String query = SQLLoadDataStream.statement(table, columns);
+        this.markWrite(query);
+        long loaded = 0;
+        // LOAD DATA cannot go through the server prepared statement protocol, a plain statement is used
+        try (Connection conn = this.acquire(); Statement statement = conn.createStatement()) {
+            while (rows.hasNext()) {
+                SQLLoadDataStream stream = new SQLLoadDataStream(rows, columns.size(), chunkSize, this.sessionTimeZone);
+                long start = System.nanoTime();
+                try {
+                    this.setLocalInfileStream(statement, stream);
+                    statement.execute(query);
+                    loaded += statement.getUpdateCount();
+                    this.metrics.record(query, System.nanoTime() - start, stream.getEncodedRows(), false);
+                } catch (SQLException exception) {
+                    this.failed(query, start, exception);
+                    this.logs.severe("MySQL error: " + exception.getMessage());
+                    exception.printStackTrace();
+                    break;
+                }
+            }
+        } catch (SQLException exception) {
+            this.logs.severe("Error when getting pool connection !");
+            exception.printStackTrace();
+        }
+        this.invalidate(query);
+        return loaded;
+    }
+
+    private void setLocalInfileStream(Statement statement, InputStream stream) throws SQLException {
+        // The driver reads the rows from the stream when the server asks for the 'stream' file
+        if (statement.isWrapperFor(JdbcStatement.class)) {
+            statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(stream);
+        } else if (statement.isWrapperFor(MariaDbStatement.class)) {
+            statement.unwrap(MariaDbStatement.class).setLocalInfileInputStream(stream);
+        } else {
+            throw new SQLException("No local infile stream hook on " + statement.getClass().getName());
+        }
+    }
+
     public void execute(final String query, final Object... vars) {
-        try (Connection conn = this.pool.getConnection()) {
+        this.markWrite(query);
+        try (Connection conn = this.acquire()) {
+            long start = System.nanoTime();
             try (PreparedStatement ps = this.prepareStatement(conn, query, vars)) {
                 assert ps != null;
                 ps.execute();
+                int updateCount = ps.getUpdateCount();
                 this.closeRessources(null, ps);
+                this.metrics.record(query, System.nanoTime() - start, updateCount, false);
+                this.invalidate(query);
             } catch (SQLException exception) {
+                this.failed(query, start, exception);
                 this.logs.severe("MySQL error: " + exception.getMessage());
                 exception.printStackTrace();
             }
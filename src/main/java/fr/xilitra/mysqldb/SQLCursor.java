@@ -0,0 +1,117 @@
+package fr.xilitra.mysqldb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class SQLCursor<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Logger logs = Logger.getLogger("SQLCursor");
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> mapper;
+
+    private T nextRow;
+    private boolean fetched = false;
+    private boolean closed = false;
+    private SQLException failure = null;
+
+    SQLCursor(Connection connection, PreparedStatement statement, ResultSet resultSet, RowMapper<T> mapper) {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.mapper = mapper;
+    }
+
+    // A read failing mid-stream throws instead of ending the iteration, a partial walk must not pass for a full one
+    @Override
+    public boolean hasNext() {
+        if (this.failure != null) {
+            throw new IllegalStateException("Cursor failed after a partial read", this.failure);
+        }
+        if (this.closed) {
+            return false;
+        }
+        if (this.fetched) {
+            return true;
+        }
+        try {
+            if (this.resultSet.next()) {
+                this.nextRow = this.mapper.map(this.resultSet);
+                this.fetched = true;
+                return true;
+            }
+        } catch (SQLException exception) {
+            logs.severe("MySQL error: " + exception.getMessage());
+            exception.printStackTrace();
+            this.failure = exception;
+            this.close();
+            throw new IllegalStateException("Cursor failed after a partial read", exception);
+        }
+        this.close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T row = this.nextRow;
+        this.nextRow = null;
+        this.fetched = false;
+        return row;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public boolean isFailed() {
+        return this.failure != null;
+    }
+
+    public SQLException getFailure() {
+        return this.failure;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.nextRow = null;
+        try {
+            this.resultSet.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            this.statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            this.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED), false).onClose(this::close);
+    }
+
+}
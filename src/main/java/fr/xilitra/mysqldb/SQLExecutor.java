@@ -0,0 +1,217 @@
+package fr.xilitra.mysqldb;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class SQLExecutor {
+
+    public enum OverflowPolicy {
+        BLOCK,
+        REJECT,
+        DROP_OLDEST
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ArrayBlockingQueue<Runnable> queue;
+    private final OverflowPolicy policy;
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public SQLExecutor(String name, int workers, int queueCapacity, OverflowPolicy policy) {
+        this(workers, queueCapacity, policy, newPlatformThreadFactory(name + "-async-"));
+    }
+
+    public SQLExecutor(int workers, int queueCapacity, OverflowPolicy policy, ThreadFactory threadFactory) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.policy = policy;
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                this.queue, threadFactory, new OverflowHandler());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + threadCount.incrementAndGet());
+    }
+
+    public void submit(Runnable task) {
+        this.submit(task, null);
+    }
+
+    // onDropped is told when DROP_OLDEST throws the task away before it ran, so a waiting future can fail
+    public void submit(Runnable task, Consumer<RejectedExecutionException> onDropped) {
+        this.submitted.incrementAndGet();
+        this.executor.execute(new QueuedTask(task, onDropped));
+        this.maxQueueDepth.accumulateAndGet(this.queue.size(), Math::max);
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return this.executor.awaitTermination(timeout, timeUnit);
+    }
+
+    public OverflowPolicy getPolicy() {
+        return this.policy;
+    }
+
+    public int getWorkers() {
+        return this.executor.getMaximumPoolSize();
+    }
+
+    public int getQueueCapacity() {
+        return this.queue.size() + this.queue.remainingCapacity();
+    }
+
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return this.submitted.get();
+    }
+
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    public long getBlocked() {
+        return this.blocked.get();
+    }
+
+    public long getCallerRuns() {
+        return this.callerRuns.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return this.totalWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return this.maxWaitNanos.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long completed = this.completed.get();
+        return completed == 0 ? 0 : this.totalWaitNanos.get() / 1_000_000.0 / completed;
+    }
+
+    private class QueuedTask implements Runnable {
+
+        private final Runnable task;
+        private final Consumer<RejectedExecutionException> onDropped;
+        private final long queuedAt = System.nanoTime();
+
+        private QueuedTask(Runnable task, Consumer<RejectedExecutionException> onDropped) {
+            this.task = task;
+            this.onDropped = onDropped;
+        }
+
+        @Override
+        public void run() {
+            long wait = System.nanoTime() - this.queuedAt;
+            SQLExecutor.this.totalWaitNanos.addAndGet(wait);
+            SQLExecutor.this.maxWaitNanos.accumulateAndGet(wait, Math::max);
+            Boolean nested = SQLExecutor.this.worker.get();
+            SQLExecutor.this.worker.set(Boolean.TRUE);
+            try {
+                this.task.run();
+            } finally {
+                if (nested == null) {
+                    SQLExecutor.this.worker.remove();
+                }
+                SQLExecutor.this.completed.incrementAndGet();
+            }
+        }
+
+        private void drop() {
+            SQLExecutor.this.dropped.incrementAndGet();
+            if (this.onDropped == null) {
+                return;
+            }
+            try {
+                this.onDropped.accept(new RejectedExecutionException("Dropped from the full SQL queue"));
+            } catch (RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }
+
+    }
+
+    private class OverflowHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                SQLExecutor.this.rejected.incrementAndGet();
+                throw new RejectedExecutionException("SQL executor is shut down");
+            }
+            switch (SQLExecutor.this.policy) {
+                case BLOCK:
+                    // A worker waiting for room in its own queue would never free it, it runs the task itself
+                    if (SQLExecutor.this.worker.get() != null) {
+                        SQLExecutor.this.callerRuns.incrementAndGet();
+                        task.run();
+                        break;
+                    }
+                    SQLExecutor.this.blocked.incrementAndGet();
+                    try {
+                        SQLExecutor.this.queue.put(task);
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        SQLExecutor.this.rejected.incrementAndGet();
+                        throw new RejectedExecutionException("Interrupted while waiting for the SQL queue", exception);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!SQLExecutor.this.queue.offer(task)) {
+                        Runnable oldest = SQLExecutor.this.queue.poll();
+                        if (oldest instanceof QueuedTask) {
+                            ((QueuedTask) oldest).drop();
+                        }
+                    }
+                    break;
+                default:
+                    SQLExecutor.this.rejected.incrementAndGet();
+                    throw new RejectedExecutionException("SQL queue is full ("
+                            + SQLExecutor.this.queue.remainingCapacity() + " remaining)");
+            }
+        }
+
+    }
+
+}
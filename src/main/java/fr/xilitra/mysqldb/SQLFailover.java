@@ -0,0 +1,126 @@
+package fr.xilitra.mysqldb;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class SQLFailover extends Scheduler {
+
+    private final String name;
+    private final SQLConnection primary;
+    private final SQLConnection standby;
+    private final Logger logs = Logger.getLogger("SQLFailover");
+    private volatile boolean failedOver = false;
+    private volatile boolean autoFailback = false;
+    private volatile int failureThreshold = 3;
+    private volatile int probeTimeoutSeconds = 2;
+    private int primaryFailures = 0;
+    private int primarySuccesses = 0;
+    private ScheduledExecutorService prober;
+    private ScheduledFuture task;
+
+    SQLFailover(String name, SQLConnection primary, SQLConnection standby) {
+        this.name = name;
+        this.primary = primary;
+        this.standby = standby;
+    }
+
+    // Probes run on their own thread, a hung probe must not hold a thread of the shared Scheduler pool
+    public synchronized void setCheckPeriod(long period, TimeUnit timeUnit) {
+        if (this.task != null) {
+            this.task.cancel(false);
+        }
+        if (this.prober == null) {
+            this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SQLFailover-" + this.name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.task = this.prober.scheduleAtFixedRate(this, period, period, timeUnit);
+    }
+
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        if (this.prober != null) {
+            this.prober.shutdown();
+            this.prober = null;
+        }
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public void setProbeTimeout(int probeTimeoutSeconds) {
+        this.probeTimeoutSeconds = Math.max(1, probeTimeoutSeconds);
+    }
+
+    // Off by default, a primary that flaps would otherwise move the traffic back and forth
+    public void setAutoFailback(boolean autoFailback) {
+        this.autoFailback = autoFailback;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public SQLConnection getPrimary() {
+        return this.primary;
+    }
+
+    public SQLConnection getStandby() {
+        return this.standby;
+    }
+
+    public SQLConnection getActive() {
+        return this.failedOver ? this.standby : this.primary;
+    }
+
+    public boolean isFailedOver() {
+        return this.failedOver;
+    }
+
+    // A fixed rate task never overlaps itself, the probe counters need no lock and a slow probe
+    // does not hold back a manual failover()
+    @Override
+    public void run() {
+        boolean primaryHealthy = this.primary.ping(this.probeTimeoutSeconds);
+        this.primaryFailures = primaryHealthy ? 0 : this.primaryFailures + 1;
+        this.primarySuccesses = primaryHealthy ? this.primarySuccesses + 1 : 0;
+        if (!this.failedOver && this.primaryFailures >= this.failureThreshold) {
+            if (this.standby.ping(this.probeTimeoutSeconds)) {
+                this.failover();
+            } else {
+                this.logs.severe("Primary " + this.primary + " of " + this.name + " is down and standby " + this.standby + " is not healthy");
+            }
+        } else if (this.failedOver && this.autoFailback && this.primarySuccesses >= this.failureThreshold) {
+            this.failback();
+        }
+    }
+
+    public synchronized void failover() {
+        if (this.failedOver) {
+            return;
+        }
+        MySqlDB.swap(this.name, this.primary, this.standby);
+        this.failedOver = true;
+        this.logs.warning("Failover of " + this.name + " from " + this.primary + " to " + this.standby);
+    }
+
+    public synchronized void failback() {
+        if (!this.failedOver) {
+            return;
+        }
+        MySqlDB.swap(this.name, this.standby, this.primary);
+        this.failedOver = false;
+        this.primary.getCircuitBreaker().reset();
+        this.logs.warning("Failback of " + this.name + " from " + this.standby + " to " + this.primary);
+    }
+
+}
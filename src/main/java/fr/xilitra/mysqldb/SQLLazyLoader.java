@@ -0,0 +1,89 @@
+package fr.xilitra.mysqldb;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+final class SQLLazyLoader {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final Logger logs = Logger.getLogger("SQLLazyLoader");
+
+    private final SQLConnection connection;
+    private final SQLStatements statements;
+    private final boolean batched;
+    private final ArrayList<SQLModel> models = new ArrayList<>();
+
+    SQLLazyLoader(SQLConnection connection, SQLStatements statements, boolean batched) {
+        this.connection = connection;
+        this.statements = statements;
+        this.batched = batched;
+    }
+
+    void attach(SQLModel model, Collection<String> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (this.batched) {
+            synchronized (this) {
+                this.models.add(model);
+            }
+        }
+        model.lazy(this, pending);
+    }
+
+    synchronized void load(SQLModel requester, String column) {
+        if (!requester.isLazyPending(column)) {
+            return;
+        }
+        ArrayList<SQLModel> targets = new ArrayList<>();
+        if (this.batched) {
+            // Every model read with the requester gets the column in the same round trip
+            for (SQLModel model : this.models) {
+                if (model.isLazyPending(column)) {
+                    targets.add(model);
+                }
+            }
+        } else {
+            targets.add(requester);
+        }
+        for (int from = 0; from < targets.size(); from += CHUNK_SIZE) {
+            this.load(targets.subList(from, Math.min(targets.size(), from + CHUNK_SIZE)), column);
+        }
+        this.models.removeIf(model -> !model.hasLazyPending());
+    }
+
+    private void load(List<SQLModel> targets, String column) {
+        String primaryKey = this.statements.getPrimaryKey();
+        Object[] keys = new Object[targets.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = targets.get(i).get(primaryKey);
+        }
+        HashMap<String, Object> values = new HashMap<>();
+        boolean[] loaded = {false};
+        String query = this.statements.selectByPrimaryKeys(Arrays.asList(primaryKey, column), keys.length);
+        this.connection.query(query, resultSet -> {
+            try {
+                while (resultSet.next()) {
+                    values.put(String.valueOf(resultSet.getObject(1)), resultSet.getObject(2));
+                }
+                loaded[0] = true;
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+                logs.severe("Error SQL lazy load of " + column + " = " + exception.getMessage());
+            }
+        }, keys);
+        // On failure the column stays pending and the next access tries again
+        if (!loaded[0]) {
+            return;
+        }
+        for (SQLModel model : targets) {
+            model.put(column, values.get(String.valueOf(model.get(primaryKey))));
+        }
+    }
+
+}
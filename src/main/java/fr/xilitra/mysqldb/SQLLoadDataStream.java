@@ -0,0 +1,193 @@
+package fr.xilitra.mysqldb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+public class SQLLoadDataStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Iterator<Object[]> rows;
+    private final int columns;
+    private final long maxRows;
+    private final int bufferSize;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private long encodedRows = 0;
+
+    // Encodes at most maxRows rows of the iterator, the rest is left for the next statement
+    public SQLLoadDataStream(Iterator<Object[]> rows, int columns, long maxRows) {
+        this(rows, columns, maxRows, TimeZone.getDefault());
+    }
+
+    // Dates are written as the wall clock of the zone the driver uses for setTimestamp, the same instant a prepared insert would store
+    public SQLLoadDataStream(Iterator<Object[]> rows, int columns, long maxRows, TimeZone timeZone) {
+        this(rows, columns, maxRows, timeZone, BUFFER_SIZE);
+    }
+
+    public SQLLoadDataStream(Iterator<Object[]> rows, int columns, long maxRows, TimeZone timeZone, int bufferSize) {
+        this.dateFormat.setTimeZone(timeZone);
+        this.rows = rows;
+        this.columns = columns;
+        this.maxRows = maxRows > 0 ? maxRows : Long.MAX_VALUE;
+        this.bufferSize = Math.max(64, bufferSize);
+        this.buffer = new byte[this.bufferSize];
+    }
+
+    // Relies on the LOAD DATA defaults: tab separated fields, one row per line, backslash escapes
+    public static String statement(String table, List<String> columns) {
+        StringBuilder names = new StringBuilder();
+        for (String column : columns) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append("`").append(column).append("`");
+        }
+        return "LOAD DATA LOCAL INFILE 'stream' INTO TABLE " + table + " CHARACTER SET binary (" + names + ")";
+    }
+
+    public long getEncodedRows() {
+        return this.encodedRows;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.fill()) {
+            return -1;
+        }
+        int read = Math.min(length, this.limit - this.position);
+        System.arraycopy(this.buffer, this.position, bytes, offset, read);
+        this.position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return this.limit - this.position;
+    }
+
+    private boolean fill() throws IOException {
+        if (this.position < this.limit) {
+            return true;
+        }
+        this.position = 0;
+        this.limit = 0;
+        // Rows are encoded only when the driver asks for more bytes, memory stays at one buffer
+        while (this.limit < this.bufferSize && this.encodedRows < this.maxRows && this.rows.hasNext()) {
+            this.encodeRow(this.rows.next());
+            this.encodedRows++;
+        }
+        if (this.buffer.length > this.bufferSize && this.limit <= this.bufferSize) {
+            this.buffer = Arrays.copyOf(this.buffer, this.bufferSize);
+        }
+        return this.limit > 0;
+    }
+
+    private void encodeRow(Object[] row) throws IOException {
+        if (row.length != this.columns) {
+            throw new IOException("Row " + this.encodedRows + " has " + row.length + " values, " + this.columns + " expected");
+        }
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                this.write((byte) '\t');
+            }
+            this.encodeValue(row[i]);
+        }
+        this.write((byte) '\n');
+    }
+
+    private void encodeValue(Object value) {
+        if (value == null) {
+            this.write((byte) '\\');
+            this.write((byte) 'N');
+        } else if (value instanceof byte[]) {
+            this.escape((byte[]) value);
+        } else if (value instanceof Boolean) {
+            this.write((byte) ((Boolean) value ? '1' : '0'));
+        } else if (value instanceof BigDecimal) {
+            this.escape(((BigDecimal) value).toPlainString().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof java.util.Date && !(value instanceof java.sql.Date)
+                && !(value instanceof java.sql.Time)) {
+            this.escape(this.formatDate((java.util.Date) value).getBytes(StandardCharsets.UTF_8));
+        } else {
+            this.escape(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String formatDate(java.util.Date date) {
+        String text = this.dateFormat.format(date);
+        int nanos = date instanceof Timestamp ? ((Timestamp) date).getNanos() : (int) Math.floorMod(date.getTime(), 1000L) * 1000000;
+        if (nanos == 0) {
+            return text;
+        }
+        String fraction = String.valueOf(1000000000 + nanos).substring(1);
+        int end = fraction.length();
+        while (fraction.charAt(end - 1) == '0') {
+            end--;
+        }
+        return text + "." + fraction.substring(0, end);
+    }
+
+    private void escape(byte[] bytes) {
+        for (byte b : bytes) {
+            switch (b) {
+                case 0:
+                    this.write((byte) '\\');
+                    this.write((byte) '0');
+                    break;
+                case '\t':
+                    this.write((byte) '\\');
+                    this.write((byte) 't');
+                    break;
+                case '\n':
+                    this.write((byte) '\\');
+                    this.write((byte) 'n');
+                    break;
+                case '\r':
+                    this.write((byte) '\\');
+                    this.write((byte) 'r');
+                    break;
+                case '\\':
+                    this.write((byte) '\\');
+                    this.write((byte) '\\');
+                    break;
+                case 26:
+                    this.write((byte) '\\');
+                    this.write((byte) 'Z');
+                    break;
+                default:
+                    this.write(b);
+            }
+        }
+    }
+
+    private void write(byte b) {
+        if (this.limit == this.buffer.length) {
+            // A single row larger than the buffer grows it until the next refill
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+        this.buffer[this.limit++] = b;
+    }
+
+}
@@ -0,0 +1,287 @@
+package fr.xilitra.mysqldb;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class SQLMetrics implements MetricsTrackerFactory {
+
+    public static final String OTHER_STATEMENTS = "<other>";
+
+    private final ConcurrentHashMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+    private final Histogram poolWait = new Histogram();
+    private final Histogram connectionUsage = new Histogram();
+    private final LongAdder connectionTimeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final Histogram connectionCreation = new Histogram();
+    private final AtomicLong warmUpConnections = new AtomicLong();
+    private final AtomicLong warmUpStatements = new AtomicLong();
+    private final AtomicLong warmUpNanos = new AtomicLong();
+    private final List<SQLMetricsExporter> exporters = new CopyOnWriteArrayList<>();
+    private final Logger logs = Logger.getLogger("SQLMetrics");
+
+    private volatile PoolStats poolStats;
+    private volatile String poolName;
+    private volatile long slowQueryThresholdNanos = 0;
+    private volatile int maxStatements = 500;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                SQLMetrics.this.connectionsCreated.increment();
+                SQLMetrics.this.connectionCreation.record(TimeUnit.MILLISECONDS.toNanos(connectionCreatedMillis));
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                SQLMetrics.this.poolWait.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                SQLMetrics.this.connectionUsage.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                SQLMetrics.this.connectionTimeouts.increment();
+            }
+        };
+    }
+
+    void record(String query, long nanos, long rows, boolean error) {
+        StatementMetrics metrics = this.statements.get(query);
+        if (metrics == null) {
+            if (this.statements.size() >= this.maxStatements) {
+                query = OTHER_STATEMENTS;
+            }
+            metrics = this.statements.computeIfAbsent(query, StatementMetrics::new);
+        }
+        metrics.latency.record(nanos);
+        if (rows > 0) {
+            metrics.rows.add(rows);
+        }
+        if (error) {
+            metrics.errors.increment();
+        }
+        long threshold = this.slowQueryThresholdNanos;
+        if (threshold > 0 && nanos >= threshold) {
+            this.logs.warning("Slow query (" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms): " + query);
+        }
+    }
+
+    void recordWarmUp(int connections, int statements, long nanos) {
+        this.warmUpConnections.set(connections);
+        this.warmUpStatements.set(statements);
+        this.warmUpNanos.set(nanos);
+    }
+
+    public void setSlowQueryThreshold(long threshold, TimeUnit timeUnit) {
+        this.slowQueryThresholdNanos = timeUnit.toNanos(threshold);
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.slowQueryThresholdNanos);
+    }
+
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    public Collection<StatementMetrics> getStatements() {
+        return new ArrayList<>(this.statements.values());
+    }
+
+    public StatementMetrics getStatement(String query) {
+        return this.statements.get(query);
+    }
+
+    public Histogram getPoolWait() {
+        return this.poolWait;
+    }
+
+    public Histogram getConnectionUsage() {
+        return this.connectionUsage;
+    }
+
+    public long getConnectionTimeouts() {
+        return this.connectionTimeouts.sum();
+    }
+
+    public long getConnectionsCreated() {
+        return this.connectionsCreated.sum();
+    }
+
+    public Histogram getConnectionCreation() {
+        return this.connectionCreation;
+    }
+
+    // Connections opened then closed by the pool (lifetime, idle timeout or failure), the churn to tune
+    public long getConnectionsRetired() {
+        PoolStats poolStats = this.poolStats;
+        long created = this.connectionsCreated.sum();
+        return poolStats != null ? Math.max(0, created - poolStats.getTotalConnections()) : 0;
+    }
+
+    public long getWarmUpConnections() {
+        return this.warmUpConnections.get();
+    }
+
+    public long getWarmUpStatements() {
+        return this.warmUpStatements.get();
+    }
+
+    public long getWarmUpMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.warmUpNanos.get());
+    }
+
+    public String getPoolName() {
+        return this.poolName;
+    }
+
+    public PoolStats getPoolStats() {
+        return this.poolStats;
+    }
+
+    public void reset() {
+        this.statements.clear();
+    }
+
+    public ScheduledFuture addExporter(SQLMetricsExporter exporter, long period, TimeUnit timeUnit) {
+        this.exporters.add(exporter);
+        return new Scheduler() {
+            @Override
+            public void run() {
+                SQLMetrics.this.export(exporter);
+            }
+        }.scheduleAsyncRepeatingTask(period, period, timeUnit);
+    }
+
+    public void removeExporter(SQLMetricsExporter exporter) {
+        this.exporters.remove(exporter);
+    }
+
+    public void export() {
+        for (SQLMetricsExporter exporter : this.exporters) {
+            this.export(exporter);
+        }
+    }
+
+    private void export(SQLMetricsExporter exporter) {
+        if (!this.exporters.contains(exporter)) {
+            return;
+        }
+        try {
+            exporter.export(this);
+        } catch (Exception exception) {
+            this.logs.severe("Error when exporting metrics: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    public static class StatementMetrics {
+
+        private final String query;
+        private final Histogram latency = new Histogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private StatementMetrics(String query) {
+            this.query = query;
+        }
+
+        public String getQuery() {
+            return this.query;
+        }
+
+        public Histogram getLatency() {
+            return this.latency;
+        }
+
+        public long getRows() {
+            return this.rows.sum();
+        }
+
+        public long getErrors() {
+            return this.errors.sum();
+        }
+
+    }
+
+    public static class Histogram {
+
+        // Bucket i holds values whose highest set bit is i - 1, bucket 0 holds zero
+        private final AtomicLongArray buckets = new AtomicLongArray(65);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            this.count.increment();
+            this.sum.add(nanos);
+            if (nanos > this.max.get()) {
+                this.max.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        public long getTotalNanos() {
+            return this.sum.sum();
+        }
+
+        public long getMaxNanos() {
+            return this.max.get();
+        }
+
+        public double getMeanMillis() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : this.sum.sum() / 1_000_000.0 / count;
+        }
+
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            long[] counts = new long[this.buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : Math.min(this.max.get(), i == 64 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return this.max.get();
+        }
+
+    }
+
+}
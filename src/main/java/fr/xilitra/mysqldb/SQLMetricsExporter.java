@@ -0,0 +1,6 @@
+package fr.xilitra.mysqldb;
+
+public interface SQLMetricsExporter {
+
+    void export(SQLMetrics metrics);
+}
@@ -0,0 +1,280 @@
+package fr.xilitra.mysqldb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class SQLMicroBatcher extends Scheduler {
+
+    private final SQLConnection connection;
+    private final int maxStatements;
+    private final ConcurrentLinkedQueue<PendingStatement> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Logger logs = Logger.getLogger("SQLMicroBatcher");
+    private volatile SQLMicroBatcher movedTo = null;
+    private long windowNanos;
+    private ScheduledFuture task;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    SQLMicroBatcher(SQLConnection connection, int maxStatements) {
+        this.connection = connection;
+        this.maxStatements = Math.max(1, maxStatements);
+    }
+
+    void start(long window, TimeUnit timeUnit) {
+        this.windowNanos = timeUnit.toNanos(window);
+        this.task = this.scheduleAsyncRepeatingTask(window, window, timeUnit);
+    }
+
+    void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        this.flush();
+    }
+
+    long getWindowNanos() {
+        return this.windowNanos;
+    }
+
+    // Failover: the queued statements run on the connection that now takes the traffic
+    synchronized void handOver(SQLMicroBatcher target) {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        this.movedTo = target;
+        PendingStatement pending;
+        int moved = 0;
+        while ((pending = this.queue.poll()) != null) {
+            this.queued.decrementAndGet();
+            target.queue.add(pending);
+            target.queued.incrementAndGet();
+            moved++;
+        }
+        if (moved > 0) {
+            this.logs.warning("Moved " + moved + " queued statements to " + target.connection);
+        }
+    }
+
+    public int getMaxStatements() {
+        return this.maxStatements;
+    }
+
+    public int getQueuedCount() {
+        return this.queued.get();
+    }
+
+    public long getBatchCount() {
+        return this.batches.get();
+    }
+
+    public long getStatementCount() {
+        return this.statements.get();
+    }
+
+    public long getFallbackCount() {
+        return this.fallbacks.get();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = this.batches.get();
+        return batches == 0 ? 0 : (double) this.statements.get() / batches;
+    }
+
+    void add(String query, Object[] vars, Callback<Integer> callback, CompletableFuture<Integer> future, Executor completionExecutor) {
+        SQLMicroBatcher movedTo = this.movedTo;
+        if (movedTo != null) {
+            movedTo.add(query, vars, callback, future, completionExecutor);
+            return;
+        }
+        this.queue.add(new PendingStatement(query, vars, callback, future, completionExecutor));
+        // A full batch does not wait for the end of the window
+        if (this.queued.incrementAndGet() >= this.maxStatements && this.drainScheduled.compareAndSet(false, true)) {
+            try {
+                this.connection.runAsync(() -> {
+                    this.drainScheduled.set(false);
+                    this.drain();
+                }, exception -> this.drainScheduled.set(false));
+            } catch (RuntimeException exception) {
+                this.drainScheduled.set(false);
+                this.logs.warning("Cannot schedule micro-batch, it will run at the end of the window: " + exception.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        this.flush();
+    }
+
+    public void flush() {
+        while (!this.queue.isEmpty()) {
+            this.drain();
+        }
+    }
+
+    private void drain() {
+        ArrayList<PendingStatement> batch = new ArrayList<>(Math.min(this.maxStatements, this.queued.get()));
+        PendingStatement pending;
+        while (batch.size() < this.maxStatements && (pending = this.queue.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        this.queued.addAndGet(-batch.size());
+        try {
+            this.execute(batch);
+        } catch (Exception exception) {
+            this.logs.severe("Error when running micro-batch: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    private void execute(List<PendingStatement> batch) {
+        try (Connection conn = this.connection.getPoolConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                this.executeTransaction(conn, batch);
+                conn.commit();
+                for (PendingStatement pending : batch) {
+                    this.connection.invalidate(pending.query);
+                }
+                this.batches.incrementAndGet();
+                this.statements.addAndGet(batch.size());
+            } catch (SQLException exception) {
+                conn.rollback();
+                conn.setAutoCommit(autoCommit);
+                // Nothing was applied, replay one by one so only the faulty statements fail
+                this.fallbacks.incrementAndGet();
+                this.logs.warning("Micro-batch of " + batch.size() + " statements rolled back, replaying individually: " + exception.getMessage());
+                for (PendingStatement pending : batch) {
+                    pending.updateCount = -1;
+                    this.executeSingle(conn, pending);
+                }
+                return;
+            }
+            conn.setAutoCommit(autoCommit);
+        } catch (SQLException exception) {
+            this.logs.severe("Error when getting pool connection !");
+            exception.printStackTrace();
+            for (PendingStatement pending : batch) {
+                pending.fail(exception);
+            }
+            return;
+        }
+        for (PendingStatement pending : batch) {
+            pending.succeed();
+        }
+    }
+
+    private void executeTransaction(Connection conn, List<PendingStatement> batch) throws SQLException {
+        int start = 0;
+        while (start < batch.size()) {
+            // Consecutive statements with the same SQL share one PreparedStatement, the order is kept
+            String query = batch.get(start).query;
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).query.equals(query)) {
+                end++;
+            }
+            long begin = System.nanoTime();
+            try (PreparedStatement ps = conn.prepareStatement(query)) {
+                for (int i = start; i < end; i++) {
+                    Object[] vars = batch.get(i).vars;
+                    for (int j = 0; j < vars.length; j++) {
+                        ps.setObject(j + 1, vars[j]);
+                    }
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                for (int i = start; i < end; i++) {
+                    batch.get(i).updateCount = i - start < counts.length ? counts[i - start] : -1;
+                }
+                this.connection.getMetrics().record(query, System.nanoTime() - begin, end - start, false);
+            } catch (SQLException exception) {
+                this.connection.getMetrics().record(query, System.nanoTime() - begin, 0, true);
+                throw exception;
+            }
+            start = end;
+        }
+    }
+
+    private void executeSingle(Connection conn, PendingStatement pending) {
+        long start = System.nanoTime();
+        try (PreparedStatement ps = conn.prepareStatement(pending.query)) {
+            for (int i = 0; i < pending.vars.length; i++) {
+                ps.setObject(i + 1, pending.vars[i]);
+            }
+            ps.execute();
+            pending.updateCount = ps.getUpdateCount();
+            this.connection.getMetrics().record(pending.query, System.nanoTime() - start, pending.updateCount, false);
+            this.connection.invalidate(pending.query);
+        } catch (SQLException exception) {
+            if (exception.getErrorCode() != 1060 || pending.future != null) {
+                this.connection.getMetrics().record(pending.query, System.nanoTime() - start, 0, true);
+                this.logs.severe("MySQL error: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+            pending.fail(exception);
+            return;
+        }
+        pending.succeed();
+    }
+
+    private class PendingStatement {
+
+        private final String query;
+        private final Object[] vars;
+        private final Callback<Integer> callback;
+        private final CompletableFuture<Integer> future;
+        private final Executor completionExecutor;
+        private int updateCount = -1;
+
+        private PendingStatement(String query, Object[] vars, Callback<Integer> callback, CompletableFuture<Integer> future, Executor completionExecutor) {
+            this.query = query;
+            this.vars = vars;
+            this.callback = callback;
+            this.future = future;
+            this.completionExecutor = completionExecutor;
+        }
+
+        private void succeed() {
+            if (this.future != null) {
+                SQLMicroBatcher.this.connection.complete(this.future, this.updateCount, null, this.completionExecutor);
+            }
+            if (this.callback != null) {
+                try {
+                    this.callback.run(this.updateCount);
+                } catch (Exception exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            if (this.future != null) {
+                SQLMicroBatcher.this.connection.complete(this.future, null, throwable, this.completionExecutor);
+            }
+        }
+
+    }
+
+}
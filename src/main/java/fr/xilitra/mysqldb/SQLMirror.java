@@ -0,0 +1,298 @@
+package fr.xilitra.mysqldb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class SQLMirror<T extends SQLModel> extends Scheduler {
+
+    private final SQLModels<T> models;
+    private final String versionColumn;
+    private final LinkedHashSet<String> hashIndexes = new LinkedHashSet<>();
+    private final LinkedHashSet<String> sortedIndexes = new LinkedHashSet<>();
+    private final Logger logs;
+    private volatile Snapshot<T> snapshot = null;
+    private int fullReloadEvery = 10;
+    private int refreshesSinceReload = 0;
+    private ScheduledFuture task;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong refreshedRows = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    SQLMirror(SQLModels<T> models, String versionColumn, String table) {
+        this.models = models;
+        this.versionColumn = versionColumn;
+        this.logs = Logger.getLogger("SQLMirror<" + table + ">");
+    }
+
+    public synchronized SQLMirror<T> hashIndex(String column) {
+        this.hashIndexes.add(column);
+        this.rebuild();
+        return this;
+    }
+
+    public synchronized SQLMirror<T> sortedIndex(String column) {
+        this.sortedIndexes.add(column);
+        this.rebuild();
+        return this;
+    }
+
+    // Rows deleted from the table are only noticed by a full reload, 0 never reloads
+    public synchronized SQLMirror<T> fullReloadEvery(int refreshes) {
+        this.fullReloadEvery = Math.max(0, refreshes);
+        return this;
+    }
+
+    public synchronized SQLMirror<T> start(long period, TimeUnit timeUnit) {
+        this.stop();
+        if (this.snapshot == null) {
+            this.reload();
+        }
+        this.task = this.scheduleAsyncRepeatingTask(period, period, timeUnit);
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.refresh();
+        } catch (Exception exception) {
+            this.logs.severe("Error when refreshing mirror: " + exception.getMessage());
+            exception.printStackTrace();
+        }
+    }
+
+    public synchronized boolean reload() {
+        ArrayList<T> rows = this.models.load(null);
+        if (rows == null) {
+            this.failures.incrementAndGet();
+            return false;
+        }
+        HashMap<Object, T> byKey = new HashMap<>();
+        for (T row : rows) {
+            byKey.put(key(row.get(row.getPrimaryKey())), row);
+        }
+        this.snapshot = this.build(byKey);
+        this.refreshesSinceReload = 0;
+        this.reloads.incrementAndGet();
+        return true;
+    }
+
+    public synchronized boolean refresh() {
+        Snapshot<T> current = this.snapshot;
+        if (current == null || current.version == null
+                || (this.fullReloadEvery > 0 && ++this.refreshesSinceReload >= this.fullReloadEvery)) {
+            return this.reload();
+        }
+        // >= reads the rows of the last version again, a row committed late with the same timestamp is not missed
+        ArrayList<T> rows = this.models.load("WHERE " + this.versionColumn + " >= ?", current.version);
+        if (rows == null) {
+            this.failures.incrementAndGet();
+            return false;
+        }
+        this.refreshes.incrementAndGet();
+        HashMap<Object, T> byKey = null;
+        for (T row : rows) {
+            Object key = key(row.get(row.getPrimaryKey()));
+            T previous = current.byKey.get(key);
+            // A row changed twice within the version's resolution keeps its version, only its contents tell
+            if (previous != null && sameVersion(previous.get(this.versionColumn), row.get(this.versionColumn))
+                    && previous.getColumns().equals(row.getColumns())) {
+                continue;
+            }
+            if (byKey == null) {
+                byKey = new HashMap<>(current.byKey);
+            }
+            byKey.put(key, row);
+            this.refreshedRows.incrementAndGet();
+        }
+        if (byKey != null) {
+            this.snapshot = this.build(byKey);
+        }
+        return true;
+    }
+
+    private void rebuild() {
+        Snapshot<T> current = this.snapshot;
+        if (current != null) {
+            this.snapshot = this.build(new HashMap<>(current.byKey));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Snapshot<T> build(HashMap<Object, T> byKey) {
+        HashMap<String, HashMap<Object, List<T>>> hashes = new HashMap<>();
+        HashMap<String, TreeMap<Object, List<T>>> sorted = new HashMap<>();
+        for (String column : this.hashIndexes) {
+            hashes.put(column, new HashMap<>());
+        }
+        for (String column : this.sortedIndexes) {
+            sorted.put(column, new TreeMap<>());
+        }
+        Comparable<Object> version = null;
+        for (T row : byKey.values()) {
+            for (Map.Entry<String, HashMap<Object, List<T>>> index : hashes.entrySet()) {
+                index.getValue().computeIfAbsent(key(row.get(index.getKey())), value -> new ArrayList<>()).add(row);
+            }
+            for (Map.Entry<String, TreeMap<Object, List<T>>> index : sorted.entrySet()) {
+                Object value = key(row.get(index.getKey()));
+                // A sorted index cannot order NULL or values of unrelated types, those rows stay out of it
+                if (value instanceof Comparable) {
+                    try {
+                        index.getValue().computeIfAbsent(value, key -> new ArrayList<>()).add(row);
+                    } catch (ClassCastException exception) {
+                        this.logs.warning("Column " + index.getKey() + " mixes types, " + value + " is not indexed");
+                    }
+                }
+            }
+            Object rowVersion = row.get(this.versionColumn);
+            if (rowVersion instanceof Comparable && (version == null || version.compareTo(rowVersion) < 0)) {
+                version = (Comparable<Object>) rowVersion;
+            }
+        }
+        return new Snapshot<>(byKey, hashes, sorted, version);
+    }
+
+    // The snapshot rows never leave the mirror, a reader setting a column would change them for every other reader
+    private List<T> copies(Collection<T> rows) {
+        ArrayList<T> copies = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            copies.add(this.models.copy(row));
+        }
+        return copies;
+    }
+
+    public T get(Object primaryKey) {
+        Snapshot<T> snapshot = this.snapshot;
+        T row = snapshot != null ? snapshot.byKey.get(key(primaryKey)) : null;
+        return row != null ? this.models.copy(row) : null;
+    }
+
+    public Collection<T> all() {
+        Snapshot<T> snapshot = this.snapshot;
+        return snapshot != null ? this.copies(snapshot.byKey.values()) : Collections.emptyList();
+    }
+
+    public int size() {
+        Snapshot<T> snapshot = this.snapshot;
+        return snapshot != null ? snapshot.byKey.size() : 0;
+    }
+
+    public List<T> find(String column, Object value) {
+        Snapshot<T> snapshot = this.snapshot;
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        HashMap<Object, List<T>> index = snapshot.hashes.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("No hash index on " + column);
+        }
+        List<T> rows = index.get(key(value));
+        return rows != null ? this.copies(rows) : Collections.emptyList();
+    }
+
+    public List<T> range(String column, Object from, Object to) {
+        return this.range(column, from, true, to, false);
+    }
+
+    // A null bound leaves that side of the range open
+    public List<T> range(String column, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        Snapshot<T> snapshot = this.snapshot;
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        TreeMap<Object, List<T>> index = snapshot.sorted.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("No sorted index on " + column);
+        }
+        NavigableMap<Object, List<T>> range = index;
+        if (from != null) {
+            range = range.tailMap(key(from), fromInclusive);
+        }
+        if (to != null) {
+            range = range.headMap(key(to), toInclusive);
+        }
+        ArrayList<T> rows = new ArrayList<>();
+        for (List<T> values : range.values()) {
+            for (T row : values) {
+                rows.add(this.models.copy(row));
+            }
+        }
+        return rows;
+    }
+
+    public Object getVersion() {
+        Snapshot<T> snapshot = this.snapshot;
+        return snapshot != null ? snapshot.version : null;
+    }
+
+    public String getVersionColumn() {
+        return this.versionColumn;
+    }
+
+    public long getRefreshCount() {
+        return this.refreshes.get();
+    }
+
+    public long getReloadCount() {
+        return this.reloads.get();
+    }
+
+    public long getRefreshedRows() {
+        return this.refreshedRows.get();
+    }
+
+    public long getFailureCount() {
+        return this.failures.get();
+    }
+
+    // Integer, Long, Short and Byte keys from the driver or the caller must land on the same entry
+    private static Object key(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private static boolean sameVersion(Object previous, Object current) {
+        return previous == null ? current == null : previous.equals(current);
+    }
+
+    // Never modified once published, readers only follow the volatile reference
+    private static final class Snapshot<T> {
+
+        private final HashMap<Object, T> byKey;
+        private final HashMap<String, HashMap<Object, List<T>>> hashes;
+        private final HashMap<String, TreeMap<Object, List<T>>> sorted;
+        private final Object version;
+
+        private Snapshot(HashMap<Object, T> byKey, HashMap<String, HashMap<Object, List<T>>> hashes,
+                         HashMap<String, TreeMap<Object, List<T>>> sorted, Object version) {
+            this.byKey = byKey;
+            this.hashes = hashes;
+            this.sorted = sorted;
+            this.version = version;
+        }
+
+    }
+
+}
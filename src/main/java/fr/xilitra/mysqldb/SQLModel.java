@@ -1,9 +1,13 @@
 package fr.xilitra.mysqldb;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class SQLModel {
 
@@ -16,6 +20,16 @@ public abstract class SQLModel {
 
     private boolean populate = false;
 
+    private final SQLModelMapper mapper = SQLModelMapper.of(this.getClass());
+
+    private SQLStatements statements;
+
+    private SQLConnection connection;
+
+    private SQLLazyLoader lazyLoader;
+
+    private Set<String> lazyPending;
+
     public SQLModel(String table, String primaryKey) {
         this.table = table;
         this.primaryKey = primaryKey;
@@ -30,12 +44,94 @@ public abstract class SQLModel {
     }
 
     public HashMap<String, Object> getColumns() {
-        return this.columns;
+        if (this.mapper == null) {
+            return this.columns;
+        }
+        HashMap<String, Object> columns = new HashMap<>(this.columns);
+        for (SQLModelMapper.Binding binding : this.mapper.getBindings()) {
+            if (this.isLazyPending(binding.getColumn())) {
+                continue;
+            }
+            Object value = this.get(binding.getColumn());
+            if (value != null || !binding.getColumn().equals(this.primaryKey)) {
+                columns.put(binding.getColumn(), value);
+            }
+        }
+        return columns;
+    }
+
+    public SQLStatements statements() {
+        SQLStatements statements = this.statements;
+        if (statements == null) {
+            statements = SQLStatements.of(this.table, this.primaryKey);
+            this.statements = statements;
+        }
+        return statements;
+    }
+
+    void bind(SQLConnection connection) {
+        this.connection = connection;
+    }
+
+    SQLConnection getConnection() {
+        SQLConnection connection = this.connection;
+        return connection != null ? connection.current() : MySqlDB.getDB();
+    }
+
+    private boolean joinTransaction(SQLConnection connection) {
+        SQLTransaction transaction = connection.getTransaction();
+        if (transaction == null) {
+            return false;
+        }
+        transaction.touch(this);
+        return true;
+    }
+
+    void lazy(SQLLazyLoader loader, Collection<String> pending) {
+        Set<String> lazyPending = ConcurrentHashMap.newKeySet();
+        lazyPending.addAll(pending);
+        this.lazyPending = lazyPending;
+        this.lazyLoader = loader;
+    }
+
+    boolean isLazyPending(String columnName) {
+        Set<String> lazyPending = this.lazyPending;
+        return lazyPending != null && lazyPending.contains(columnName);
+    }
+
+    boolean hasLazyPending() {
+        Set<String> lazyPending = this.lazyPending;
+        return lazyPending != null && !lazyPending.isEmpty();
+    }
+
+    private void ensureLoaded(String columnName) {
+        SQLLazyLoader lazyLoader = this.lazyLoader;
+        if (lazyLoader != null && this.isLazyPending(columnName)) {
+            lazyLoader.load(this, columnName);
+        }
+    }
+
+    SQLModelMapper getMapper() {
+        return this.mapper;
+    }
+
+    void populate(ResultSet resultSet, SQLModelMapper.Plan plan) {
+        try {
+            plan.apply(this, resultSet);
+            this.populate = true;
+            this.onPopulated();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
     }
 
     public void populate(ResultSet resultSet) {
         try {
             ResultSetMetaData meta = resultSet.getMetaData();
+            if (this.mapper != null) {
+                this.populate(resultSet, this.mapper.plan(meta));
+                return;
+            }
             for (int i = 1; i <= meta.getColumnCount(); ++i) {
                 this.columns.put(meta.getColumnName(i), resultSet.getObject(i));
             }
@@ -48,23 +144,108 @@ public abstract class SQLModel {
 
     protected void onPopulated() {}
 
+    void copyFrom(SQLModel source) {
+        this.columns = new HashMap<>(source.columns);
+        if (this.mapper != null) {
+            for (SQLModelMapper.Binding binding : this.mapper.getBindings()) {
+                binding.set(this, binding.get(source));
+            }
+        }
+        this.connection = source.connection;
+        this.statements = source.statements;
+        Set<String> lazyPending = source.lazyPending;
+        if (lazyPending != null && !lazyPending.isEmpty()) {
+            this.lazy(source.lazyLoader, lazyPending);
+        }
+        this.populate = source.populate;
+        if (this.populate) {
+            this.onPopulated();
+        }
+    }
+
+    private SQLModelMapper.Binding binding(String columnName) {
+        return this.mapper != null ? this.mapper.get(columnName) : null;
+    }
+
+    void put(String columnName, Object value) {
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding != null) {
+            binding.set(this, value);
+        } else {
+            this.columns.put(columnName, value);
+        }
+        Set<String> lazyPending = this.lazyPending;
+        if (lazyPending != null && lazyPending.remove(columnName) && lazyPending.isEmpty()) {
+            this.lazyLoader = null;
+        }
+    }
+
     public Object get(String columnName) {
-        return this.columns.get(columnName);
+        this.ensureLoaded(columnName);
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding == null) {
+            return this.columns.get(columnName);
+        }
+        Object value = binding.get(this);
+        // A primitive primary key still at 0 on a new model means "not set yet"
+        if (!this.populate && columnName.equals(this.primaryKey)
+                && value instanceof Number && ((Number) value).longValue() == 0) {
+            return null;
+        }
+        return value;
     }
 
     public String getString(String columnName) {
+        this.ensureLoaded(columnName);
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding != null) {
+            Object value = binding.get(this);
+            return value != null ? value.toString() : null;
+        }
         return (String) this.columns.get(columnName);
     }
 
+    public byte[] getBytes(String columnName) {
+        Object value = this.get(columnName);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public SQLBlob openBlob(String columnName) {
+        return this.openBlob(columnName, 65536);
+    }
+
+    // Streams the column from the database without loading it, pairs with @SQLColumn(lazy = true)
+    public SQLBlob openBlob(String columnName, int chunkSize) {
+        return this.getConnection().openBlob(this.table, columnName, this.primaryKey, this.get(this.primaryKey), chunkSize);
+    }
+
     public int getInt(String columnName) {
+        this.ensureLoaded(columnName);
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding != null) {
+            return binding.getInt(this);
+        }
         return Integer.parseInt(this.columns.get(columnName).toString());
     }
 
     public double getDouble(String columnName) {
+        this.ensureLoaded(columnName);
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding != null) {
+            return binding.getDouble(this);
+        }
         return Double.parseDouble(this.columns.get(columnName).toString());
     }
 
     public long getLong(String columnName) {
+        this.ensureLoaded(columnName);
+        SQLModelMapper.Binding binding = this.binding(columnName);
+        if (binding != null) {
+            return binding.getLong(this);
+        }
         return Long.parseLong(this.columns.get(columnName).toString());
     }
 
@@ -72,33 +253,39 @@ public abstract class SQLModel {
         if (this.exists() && columnName.equals(this.primaryKey)) {
             return;
         }
-        this.columns.put(columnName, value);
+        this.put(columnName, value);
         if (!this.populate) {
             return;
         }
-        if (value == null) {
-            MySqlDB.getDB().AsyncExecute("UPDATE " + this.table
-                    + " SET " + columnName + " = NULL WHERE " + this.primaryKey + " = ?", this.getInt(this.primaryKey));
-        } else {
-            MySqlDB.getDB().AsyncExecute("UPDATE " + this.table
-                    + " SET " + columnName + " = ? WHERE " + this.primaryKey + " = ?", value, this.getInt(this.primaryKey));
+        SQLModelCache.onUpdate(this);
+        SQLConnection connection = this.getConnection();
+        boolean inTransaction = this.joinTransaction(connection);
+        SQLWriteBehind writeBehind = connection.getWriteBehind();
+        if (writeBehind != null) {
+            if (!inTransaction) {
+                writeBehind.markSet(this, this.getInt(this.primaryKey), columnName, value);
+                return;
+            }
+            writeBehind.discard(this, columnName);
         }
+        connection.AsyncExecute(this.statements().update(columnName), value, this.getInt(this.primaryKey));
     }
 
     public void setSync(String columnName, Object value) {
         if (this.exists() && columnName.equals(this.primaryKey)) {
             return;
         }
-        this.columns.put(columnName, value);
-        if (value == null) {
-            MySqlDB.getDB().execute("UPDATE " + this.table
-                    + " SET " + columnName + " = NULL WHERE " + this.primaryKey + " = ?", this.getInt(this.primaryKey));
-        } else {
-            System.out.println("UPDATE " + this.table
-                    + " SET " + columnName + " = " + value + " WHERE " + this.primaryKey + " = " + this.getInt(this.primaryKey));
-            MySqlDB.getDB().execute("UPDATE " + this.table
-                    + " SET " + columnName + " = ? WHERE " + this.primaryKey + " = ?", value, this.getInt(this.primaryKey));
+        this.put(columnName, value);
+        if (this.populate) {
+            SQLModelCache.onUpdate(this);
+        }
+        SQLConnection connection = this.getConnection();
+        this.joinTransaction(connection);
+        SQLWriteBehind writeBehind = connection.getWriteBehind();
+        if (writeBehind != null) {
+            writeBehind.discard(this, columnName);
         }
+        connection.execute(this.statements().update(columnName), value, this.getInt(this.primaryKey));
     }
 
     public void add(String columnName, int add) {
@@ -108,10 +295,16 @@ public abstract class SQLModel {
         if (!this.populate) {
             return;
         }
-        this.columns.put(columnName, this.getInt(columnName) + add);
-        MySqlDB.getDB().AsyncExecute("UPDATE " + this.table
-                + " SET " + columnName + " = " + columnName + " + " + add
-                + " WHERE " + this.primaryKey + " = ?", this.getInt(this.primaryKey));
+        this.put(columnName, this.getInt(columnName) + add);
+        SQLModelCache.onUpdate(this);
+        SQLConnection connection = this.getConnection();
+        boolean inTransaction = this.joinTransaction(connection);
+        SQLWriteBehind writeBehind = connection.getWriteBehind();
+        if (writeBehind != null && !inTransaction) {
+            writeBehind.markAdd(this, this.getInt(this.primaryKey), columnName, add);
+            return;
+        }
+        connection.AsyncExecute(this.statements().increment(columnName), add, this.getInt(this.primaryKey));
     }
 
     public void sub(String columnName, int sub) {
@@ -121,10 +314,23 @@ public abstract class SQLModel {
         if (!this.populate) {
             return;
         }
-        this.columns.put(columnName, this.getInt(columnName) - sub);
-        MySqlDB.getDB().AsyncExecute("UPDATE " + this.table
-                + " SET " + columnName + " = " + columnName + " - " + sub
-                + " WHERE " + this.primaryKey + " = ?", this.getInt(this.primaryKey));
+        this.put(columnName, this.getInt(columnName) - sub);
+        SQLModelCache.onUpdate(this);
+        SQLConnection connection = this.getConnection();
+        boolean inTransaction = this.joinTransaction(connection);
+        SQLWriteBehind writeBehind = connection.getWriteBehind();
+        if (writeBehind != null && !inTransaction) {
+            writeBehind.markAdd(this, this.getInt(this.primaryKey), columnName, -sub);
+            return;
+        }
+        connection.AsyncExecute(this.statements().increment(columnName), -sub, this.getInt(this.primaryKey));
+    }
+
+    public void flush() {
+        SQLWriteBehind writeBehind = this.getConnection().getWriteBehind();
+        if (writeBehind != null) {
+            writeBehind.flush(this);
+        }
     }
 
     public boolean exists() {
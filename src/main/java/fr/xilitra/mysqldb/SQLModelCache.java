@@ -0,0 +1,196 @@
+package fr.xilitra.mysqldb;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SQLModelCache<T extends SQLModel> {
+
+    private static final ConcurrentHashMap<CacheKey, SQLModelCache<?>> caches = new ConcurrentHashMap<>();
+
+    private final String table;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, CachedModel<T>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    SQLModelCache(String table, int maxSize, long ttl, TimeUnit timeUnit) {
+        this.table = table;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl > 0 ? timeUnit.toNanos(ttl) : 0;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // A null connection stands for the main connection, the one unsharded SQLModels resolve on each call
+    static void register(SQLModelCache<?> cache, Collection<SQLConnection> connections) {
+        for (SQLConnection connection : connections) {
+            caches.put(new CacheKey(connection, cache.table), cache);
+        }
+    }
+
+    static void unregister(SQLModelCache<?> cache) {
+        caches.values().removeIf(registered -> registered == cache);
+    }
+
+    private static SQLModelCache<?> of(SQLModel model) {
+        SQLModelCache<?> cache = caches.get(new CacheKey(model.getConnection(), model.getTable()));
+        return cache != null ? cache : caches.get(new CacheKey(null, model.getTable()));
+    }
+
+    static void onUpdate(SQLModel model) {
+        SQLModelCache<?> cache = of(model);
+        if (cache != null && model.get(model.getPrimaryKey()) != null) {
+            cache.invalidateIfOther(model.getInt(model.getPrimaryKey()), model);
+        }
+    }
+
+    static void invalidate(SQLModel model) {
+        SQLModelCache<?> cache = of(model);
+        if (cache != null && model.get(model.getPrimaryKey()) != null) {
+            cache.invalidate(model.getInt(model.getPrimaryKey()));
+        }
+    }
+
+    public synchronized T get(int primaryKey) {
+        CachedModel<T> entry = this.entries.get(primaryKey);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        if (this.ttlNanos > 0 && System.nanoTime() - entry.loadedAt > this.ttlNanos) {
+            this.entries.remove(primaryKey);
+            this.expirations.incrementAndGet();
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return entry.model;
+    }
+
+    public synchronized void put(int primaryKey, T model) {
+        this.entries.put(primaryKey, new CachedModel<>(model, System.nanoTime()));
+        Iterator<Integer> eldest = this.entries.keySet().iterator();
+        while (this.entries.size() > this.maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(int primaryKey) {
+        if (this.entries.remove(primaryKey) != null) {
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    private synchronized void invalidateIfOther(int primaryKey, SQLModel model) {
+        CachedModel<T> entry = this.entries.get(primaryKey);
+        if (entry != null && entry.model != model) {
+            this.entries.remove(primaryKey);
+            this.invalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        this.invalidations.addAndGet(this.entries.size());
+        this.entries.clear();
+    }
+
+    public synchronized int cleanUp() {
+        int removed = 0;
+        if (this.ttlNanos <= 0) {
+            return removed;
+        }
+        long now = System.nanoTime();
+        Iterator<CachedModel<T>> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().loadedAt > this.ttlNanos) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        this.expirations.addAndGet(removed);
+        return removed;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public long getExpirations() {
+        return this.expirations.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + this.misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static final class CacheKey {
+
+        private final SQLConnection connection;
+        private final String table;
+
+        private CacheKey(SQLConnection connection, String table) {
+            this.connection = connection;
+            this.table = table;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey key = (CacheKey) other;
+            return this.connection == key.connection && this.table.equals(key.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.connection) + this.table.hashCode();
+        }
+
+    }
+
+    private static class CachedModel<T> {
+
+        private final T model;
+        private final long loadedAt;
+
+        private CachedModel(T model, long loadedAt) {
+            this.model = model;
+            this.loadedAt = loadedAt;
+        }
+
+    }
+
+}
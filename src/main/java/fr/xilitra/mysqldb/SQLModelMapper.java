@@ -0,0 +1,319 @@
+package fr.xilitra.mysqldb;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+final class SQLModelMapper {
+
+    private static final ClassValue<SQLModelMapper> mappers = new ClassValue<SQLModelMapper>() {
+        @Override
+        protected SQLModelMapper computeValue(Class<?> type) {
+            return new SQLModelMapper(type);
+        }
+    };
+
+    private final LinkedHashMap<String, Binding> bindings = new LinkedHashMap<>();
+    private final ArrayList<String> lazyColumns = new ArrayList<>();
+
+    private SQLModelMapper(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> current = type; current != null && current != SQLModel.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                SQLColumn column = field.getAnnotation(SQLColumn.class);
+                if (column == null || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                String name = column.value().isEmpty() ? field.getName() : column.value();
+                if (this.bindings.containsKey(name)) {
+                    continue;
+                }
+                if (column.lazy()) {
+                    this.lazyColumns.add(name);
+                }
+                try {
+                    field.setAccessible(true);
+                    this.bindings.put(name, new Binding(name, field.getType(),
+                            lookup.unreflectGetter(field), lookup.unreflectSetter(field)));
+                } catch (IllegalAccessException exception) {
+                    throw new IllegalStateException("Cannot map field " + field, exception);
+                }
+            }
+        }
+    }
+
+    static SQLModelMapper of(Class<?> type) {
+        SQLModelMapper mapper = mappers.get(type);
+        return mapper.bindings.isEmpty() ? null : mapper;
+    }
+
+    Binding get(String column) {
+        return this.bindings.get(column);
+    }
+
+    Collection<String> getLazyColumns() {
+        return this.lazyColumns;
+    }
+
+    Collection<Binding> getBindings() {
+        return this.bindings.values();
+    }
+
+    Plan plan(ResultSetMetaData meta) throws SQLException {
+        int columnCount = meta.getColumnCount();
+        String[] names = new String[columnCount];
+        Binding[] columns = new Binding[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = meta.getColumnName(i + 1);
+            columns[i] = this.bindings.get(names[i]);
+        }
+        return new Plan(names, columns);
+    }
+
+    static final class Plan {
+
+        private final String[] names;
+        private final Binding[] columns;
+
+        private Plan(String[] names, Binding[] columns) {
+            this.names = names;
+            this.columns = columns;
+        }
+
+        void apply(SQLModel model, ResultSet resultSet) throws SQLException {
+            for (int i = 0; i < this.columns.length; i++) {
+                Binding binding = this.columns[i];
+                if (binding != null) {
+                    binding.read(model, resultSet, i + 1);
+                } else {
+                    model.columns.put(this.names[i], resultSet.getObject(i + 1));
+                }
+            }
+        }
+
+    }
+
+    enum Kind {
+        INT,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        OBJECT
+    }
+
+    static final class Binding {
+
+        private final String column;
+        private final Class<?> type;
+        private final Kind kind;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Binding(String column, Class<?> type, MethodHandle getter, MethodHandle setter) {
+            this.column = column;
+            this.type = type;
+            if (type == int.class) {
+                this.kind = Kind.INT;
+            } else if (type == long.class) {
+                this.kind = Kind.LONG;
+            } else if (type == double.class) {
+                this.kind = Kind.DOUBLE;
+            } else if (type == boolean.class) {
+                this.kind = Kind.BOOLEAN;
+            } else {
+                this.kind = Kind.OBJECT;
+            }
+            Class<?> handleType = this.kind == Kind.OBJECT ? Object.class : type;
+            this.getter = getter.asType(MethodType.methodType(handleType, SQLModel.class));
+            this.setter = setter.asType(MethodType.methodType(void.class, SQLModel.class, handleType));
+        }
+
+        String getColumn() {
+            return this.column;
+        }
+
+        void read(SQLModel model, ResultSet resultSet, int index) throws SQLException {
+            try {
+                switch (this.kind) {
+                    case INT:
+                        this.setter.invokeExact(model, resultSet.getInt(index));
+                        break;
+                    case LONG:
+                        this.setter.invokeExact(model, resultSet.getLong(index));
+                        break;
+                    case DOUBLE:
+                        this.setter.invokeExact(model, resultSet.getDouble(index));
+                        break;
+                    case BOOLEAN:
+                        this.setter.invokeExact(model, resultSet.getBoolean(index));
+                        break;
+                    default:
+                        this.setter.invokeExact(model, this.convert(resultSet.getObject(index)));
+                }
+            } catch (SQLException | RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        }
+
+        Object get(SQLModel model) {
+            try {
+                switch (this.kind) {
+                    case INT:
+                        return (int) this.getter.invokeExact(model);
+                    case LONG:
+                        return (long) this.getter.invokeExact(model);
+                    case DOUBLE:
+                        return (double) this.getter.invokeExact(model);
+                    case BOOLEAN:
+                        return (boolean) this.getter.invokeExact(model);
+                    default:
+                        return (Object) this.getter.invokeExact(model);
+                }
+            } catch (RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        }
+
+        int getInt(SQLModel model) {
+            if (this.kind == Kind.INT) {
+                try {
+                    return (int) this.getter.invokeExact(model);
+                } catch (RuntimeException | Error exception) {
+                    throw exception;
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException(throwable);
+                }
+            }
+            return (int) this.getLong(model);
+        }
+
+        long getLong(SQLModel model) {
+            try {
+                switch (this.kind) {
+                    case INT:
+                        return (int) this.getter.invokeExact(model);
+                    case LONG:
+                        return (long) this.getter.invokeExact(model);
+                    case DOUBLE:
+                        return (long) (double) this.getter.invokeExact(model);
+                    default:
+                        return Long.parseLong(String.valueOf(this.get(model)));
+                }
+            } catch (RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        }
+
+        double getDouble(SQLModel model) {
+            try {
+                switch (this.kind) {
+                    case INT:
+                        return (int) this.getter.invokeExact(model);
+                    case LONG:
+                        return (long) this.getter.invokeExact(model);
+                    case DOUBLE:
+                        return (double) this.getter.invokeExact(model);
+                    default:
+                        return Double.parseDouble(String.valueOf(this.get(model)));
+                }
+            } catch (RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        }
+
+        void set(SQLModel model, Object value) {
+            try {
+                switch (this.kind) {
+                    case INT:
+                        this.setter.invokeExact(model, value == null ? 0 : toNumber(value).intValue());
+                        break;
+                    case LONG:
+                        this.setter.invokeExact(model, value == null ? 0L : toNumber(value).longValue());
+                        break;
+                    case DOUBLE:
+                        this.setter.invokeExact(model, value == null ? 0D : toNumber(value).doubleValue());
+                        break;
+                    case BOOLEAN:
+                        this.setter.invokeExact(model, toBoolean(value));
+                        break;
+                    default:
+                        this.setter.invokeExact(model, this.convert(value));
+                }
+            } catch (RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        }
+
+        private Object convert(Object value) {
+            if (value == null || this.type.isInstance(value)) {
+                return value;
+            }
+            if (this.type == Integer.class) {
+                return toNumber(value).intValue();
+            }
+            if (this.type == Long.class) {
+                return toNumber(value).longValue();
+            }
+            if (this.type == Double.class) {
+                return toNumber(value).doubleValue();
+            }
+            if (this.type == Float.class || this.type == float.class) {
+                return toNumber(value).floatValue();
+            }
+            if (this.type == Short.class || this.type == short.class) {
+                return toNumber(value).shortValue();
+            }
+            if (this.type == Byte.class || this.type == byte.class) {
+                return toNumber(value).byteValue();
+            }
+            if (this.type == Boolean.class) {
+                return toBoolean(value);
+            }
+            if (this.type == String.class) {
+                return value.toString();
+            }
+            return value;
+        }
+
+        private static Number toNumber(Object value) {
+            if (value instanceof Number) {
+                return (Number) value;
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? 1 : 0;
+            }
+            return new BigDecimal(value.toString());
+        }
+
+        private static boolean toBoolean(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).intValue() != 0;
+            }
+            return value != null && Boolean.parseBoolean(value.toString());
+        }
+
+    }
+
+}
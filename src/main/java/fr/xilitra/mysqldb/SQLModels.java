@@ -2,24 +2,263 @@ package fr.xilitra.mysqldb;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class SQLModels<T extends SQLModel> {
 
     private Class<T> method;
     private Logger logs;
+    private int insertChunkSize = 500;
+    private SQLModelCache<T> cache = null;
+    private volatile SQLMirror<T> mirror = null;
+    private SQLShards shards = null;
+    private String[] projection = null;
+    private final LinkedHashSet<String> lazyColumns = new LinkedHashSet<>();
+    private boolean lazyBatching = true;
+    private volatile Selection selection = null;
 
     public SQLModels(Class<T> method) {
         this.method = method;
         this.logs = Logger.getLogger("SQLModels<" + method.getSimpleName() + ">");
+        SQLModelMapper mapper = SQLModelMapper.of(method);
+        if (mapper != null) {
+            this.lazyColumns.addAll(mapper.getLazyColumns());
+        }
+    }
+
+    public SQLModels(Class<T> method, SQLShards shards) {
+        this(method);
+        this.shards = shards;
+    }
+
+    public SQLShards getShards() {
+        return this.shards;
+    }
+
+    private SQLConnection connection(Object primaryKey) {
+        SQLShards shards = this.shards;
+        return shards != null ? shards.connectionFor(primaryKey) : MySqlDB.getDB();
+    }
+
+    private List<SQLConnection> connections() {
+        SQLShards shards = this.shards;
+        return shards != null ? shards.getConnections() : Collections.singletonList(MySqlDB.getDB());
+    }
+
+    private void joinTransaction(SQLConnection connection, T model) {
+        // A rolled back insert must not stay in the model cache
+        SQLTransaction transaction = connection.getTransaction();
+        if (transaction != null) {
+            transaction.touch(model);
+        }
+    }
+
+    private void bind(T model, SQLConnection connection) {
+        if (this.shards != null) {
+            model.bind(connection);
+        }
+    }
+
+    public void setProjection(String... columns) {
+        this.projection = columns == null || columns.length == 0 ? null : columns.clone();
+        this.selection = null;
+    }
+
+    public List<String> getProjection() {
+        return this.projection != null ? Collections.unmodifiableList(Arrays.asList(this.projection)) : null;
+    }
+
+    public void setLazyColumns(String... columns) {
+        this.lazyColumns.clear();
+        this.lazyColumns.addAll(Arrays.asList(columns));
+        this.selection = null;
+    }
+
+    public Collection<String> getLazyColumns() {
+        return Collections.unmodifiableSet(this.lazyColumns);
+    }
+
+    public void setLazyBatching(boolean lazyBatching) {
+        this.lazyBatching = lazyBatching;
+    }
+
+    // Reads through the returned view only fetch these columns, the primary key is always added
+    public SQLModels<T> select(String... columns) {
+        SQLModels<T> view = new SQLModels<>(this.method, this.shards);
+        view.insertChunkSize = this.insertChunkSize;
+        view.lazyColumns.clear();
+        view.lazyColumns.addAll(this.lazyColumns);
+        view.lazyBatching = this.lazyBatching;
+        view.setProjection(columns);
+        return view;
+    }
+
+    private Selection selection(T model, SQLConnection connection) {
+        Selection selection = this.selection;
+        if (selection != null) {
+            return selection;
+        }
+        SQLStatements statements = model.statements();
+        if (this.projection == null && this.lazyColumns.isEmpty()) {
+            selection = new Selection("SELECT * FROM " + model.getTable(), statements.selectByPrimaryKey(), Collections.emptyList());
+            this.selection = selection;
+            return selection;
+        }
+        LinkedHashSet<String> columns = new LinkedHashSet<>();
+        columns.add(model.getPrimaryKey());
+        if (this.projection != null) {
+            columns.addAll(Arrays.asList(this.projection));
+        } else {
+            List<String> tableColumns = this.tableColumns(model, connection);
+            if (tableColumns == null) {
+                return new Selection("SELECT * FROM " + model.getTable(), statements.selectByPrimaryKey(), Collections.emptyList());
+            }
+            for (String column : tableColumns) {
+                if (!this.lazyColumns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+        ArrayList<String> lazy = new ArrayList<>(this.lazyColumns);
+        lazy.removeAll(columns);
+        String select = statements.select(columns);
+        selection = new Selection(select, select + " WHERE " + model.getPrimaryKey() + " = ?", lazy);
+        this.selection = selection;
+        return selection;
+    }
+
+    private List<String> tableColumns(T model, SQLConnection connection) {
+        ArrayList<String> columns = new ArrayList<>();
+        boolean[] loaded = {false};
+        connection.query("SELECT * FROM " + model.getTable() + " LIMIT 0", resultSet -> {
+            try {
+                java.sql.ResultSetMetaData meta = resultSet.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    columns.add(meta.getColumnName(i));
+                }
+                loaded[0] = true;
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+                this.logs.severe("Error SQL tableColumns() = " + exception.getMessage());
+            }
+        });
+        return loaded[0] ? columns : null;
+    }
+
+    private SQLLazyLoader lazyLoader(Selection selection, T model, SQLConnection connection, boolean batched) {
+        return selection.lazy.isEmpty() ? null : new SQLLazyLoader(connection, model.statements(), batched);
+    }
+
+    public int getInsertChunkSize() {
+        return this.insertChunkSize;
+    }
+
+    public void setInsertChunkSize(int insertChunkSize) {
+        this.insertChunkSize = Math.max(1, insertChunkSize);
+    }
+
+    public void enableCache(int maxSize, long ttl, TimeUnit timeUnit) {
+        try {
+            T model = this.method.newInstance();
+            this.disableCache();
+            this.cache = new SQLModelCache<>(model.getTable(), maxSize, ttl, timeUnit);
+            SQLModelCache.register(this.cache, this.shards != null
+                    ? this.shards.getConnections() : Collections.singletonList(null));
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+            this.logs.severe("Error enableCache() = " + e.getMessage());
+        }
+    }
+
+    public void disableCache() {
+        if (this.cache != null) {
+            SQLModelCache.unregister(this.cache);
+            this.cache = null;
+        }
+    }
+
+    public SQLModelCache<T> getCache() {
+        return this.cache;
+    }
+
+    // Declare the indexes on the returned mirror, then start() loads the table and schedules the refreshes.
+    // Every read returns its own copy of the mirrored row, changes to it are written like on any other model
+    public SQLMirror<T> mirror(String versionColumn) {
+        try {
+            T model = this.method.newInstance();
+            this.disableMirror();
+            this.mirror = new SQLMirror<>(this, versionColumn, model.getTable());
+            return this.mirror;
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+            this.logs.severe("Error mirror() = " + e.getMessage());
+        }
+        return null;
+    }
+
+    public void disableMirror() {
+        SQLMirror<T> mirror = this.mirror;
+        this.mirror = null;
+        if (mirror != null) {
+            mirror.stop();
+        }
+    }
+
+    T copy(T source) {
+        try {
+            T model = this.method.newInstance();
+            model.copyFrom(source);
+            return model;
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+            this.logs.severe("Error copy() = " + e.getMessage());
+        }
+        return null;
+    }
+
+    public SQLMirror<T> getMirror() {
+        return this.mirror;
     }
 
     public T get(int primaryKey) {
+        SQLMirror<T> mirror = this.mirror;
+        if (mirror != null) {
+            T mirrored = mirror.get(primaryKey);
+            if (mirrored != null) {
+                return mirrored;
+            }
+        }
+        SQLModelCache<T> cache = this.cache;
+        if (cache != null) {
+            T cached = cache.get(primaryKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
             T model = this.method.newInstance();
             this.get(model, primaryKey);
+            if (cache != null && model.exists()) {
+                cache.put(primaryKey, model);
+            }
             return model;
         } catch (InstantiationException | IllegalAccessException e) {
             e.printStackTrace();
@@ -29,17 +268,23 @@ public class SQLModels<T extends SQLModel> {
 
     public void get(T model, int primaryKey) {
         assert model != null;
-        MySqlDB.getDB().query("SELECT * FROM " + model.getTable()
-                + " WHERE " + model.getPrimaryKey() + " = " + primaryKey, resultSet -> {
+        SQLConnection connection = this.connection(primaryKey);
+        Selection selection = this.selection(model, connection);
+        connection.query(selection.selectByPrimaryKey, resultSet -> {
             try {
                 if (resultSet.first()) {
+                    this.bind(model, connection);
+                    SQLLazyLoader lazyLoader = this.lazyLoader(selection, model, connection, false);
+                    if (lazyLoader != null) {
+                        lazyLoader.attach(model, selection.lazy);
+                    }
                     model.populate(resultSet);
                 }
             } catch (SQLException exception) {
                 exception.printStackTrace();
                 this.logs.severe("Error SQL get() = " + exception.getMessage());
             }
-        });
+        }, primaryKey);
     }
 
     public T getFirst(String query, Object... vars) {
@@ -48,20 +293,78 @@ public class SQLModels<T extends SQLModel> {
     }
 
     public ArrayList<T> get(String query, Object... vars) {
+        if (this.shards == null) {
+            return this.get(MySqlDB.getDB(), query, vars);
+        }
+        try {
+            return this.getSharded(null, query, vars).join();
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            this.logs.severe("Error SQL get() #3 = " + exception.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    private CompletableFuture<ArrayList<T>> getSharded(Executor completionExecutor, String query, Object... vars) {
+        List<SQLConnection> connections = this.connections();
+        List<CompletableFuture<ArrayList<T>>> futures = new ArrayList<>(connections.size());
+        for (SQLConnection connection : connections) {
+            futures.add(connection.supplyAsync(() -> this.get(connection, query, vars), completionExecutor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            ArrayList<T> results = new ArrayList<>();
+            for (CompletableFuture<ArrayList<T>> future : futures) {
+                results.addAll(future.join());
+            }
+            return results;
+        });
+    }
+
+    private ArrayList<T> get(SQLConnection connection, String query, Object... vars) {
+        return this.load(connection, new boolean[1], query, vars);
+    }
+
+    // Unlike get(), tells an empty result apart from a failed query, the mirror must not wipe itself on errors
+    ArrayList<T> load(String query, Object... vars) {
+        ArrayList<T> results = new ArrayList<>();
+        for (SQLConnection connection : this.connections()) {
+            boolean[] loaded = {false};
+            results.addAll(this.load(connection, loaded, query, vars));
+            if (!loaded[0]) {
+                return null;
+            }
+        }
+        return results;
+    }
+
+    private ArrayList<T> load(SQLConnection connection, boolean[] loaded, String query, Object... vars) {
         ArrayList<T> results = new ArrayList<>();
         try {
             T model = this.method.newInstance();
             assert model != null;
+            Selection selection = this.selection(model, connection);
+            SQLLazyLoader lazyLoader = this.lazyLoader(selection, model, connection, this.lazyBatching);
 
-            MySqlDB.getDB().query("SELECT * FROM " + model.getTable() + (query != null ? " " + query : ""),
+            connection.query(selection.selectFrom + (query != null ? " " + query : ""),
                     resultSet -> {
                         try {
+                            SQLModelMapper.Plan plan = model.getMapper() != null
+                                    ? model.getMapper().plan(resultSet.getMetaData()) : null;
                             while (resultSet.next()) {
                                 T newModel = this.method.newInstance();
                                 assert newModel != null;
-                                newModel.populate(resultSet);
+                                this.bind(newModel, connection);
+                                if (lazyLoader != null) {
+                                    lazyLoader.attach(newModel, selection.lazy);
+                                }
+                                if (plan != null) {
+                                    newModel.populate(resultSet, plan);
+                                } else {
+                                    newModel.populate(resultSet);
+                                }
                                 results.add(newModel);
                             }
+                            loaded[0] = true;
                         } catch (Exception exception) {
                             exception.printStackTrace();
                         }
@@ -78,14 +381,247 @@ public class SQLModels<T extends SQLModel> {
         return this.get(null);
     }
 
+    public ArrayList<T> page(Object afterKey, int pageSize) {
+        try {
+            T model = this.method.newInstance();
+            String primaryKey = model.getPrimaryKey();
+            ArrayList<T> page = afterKey == null
+                    ? this.get("ORDER BY " + primaryKey + " LIMIT ?", pageSize)
+                    : this.get("WHERE " + primaryKey + " > ? ORDER BY " + primaryKey + " LIMIT ?", afterKey, pageSize);
+            if (this.shards != null && page.size() > pageSize) {
+                // Every shard returned its own next page, keep the smallest keys overall
+                page.sort((first, second) -> Long.compare(first.getLong(primaryKey), second.getLong(primaryKey)));
+                page.subList(pageSize, page.size()).clear();
+            }
+            return page;
+        } catch (InstantiationException | IllegalAccessException exception) {
+            exception.printStackTrace();
+            this.logs.severe("Error SQL page() = " + exception.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    public Iterator<List<T>> pages(int pageSize) {
+        return new Iterator<List<T>>() {
+
+            private ArrayList<T> next = SQLModels.this.page(null, pageSize);
+
+            @Override
+            public boolean hasNext() {
+                return !this.next.isEmpty();
+            }
+
+            @Override
+            public List<T> next() {
+                if (this.next.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                ArrayList<T> page = this.next;
+                if (page.size() < pageSize) {
+                    this.next = new ArrayList<>();
+                } else {
+                    T last = page.get(page.size() - 1);
+                    this.next = SQLModels.this.page(last.get(last.getPrimaryKey()), pageSize);
+                }
+                return page;
+            }
+        };
+    }
+
+    public long forEachParallel(int parallelism, int pageSize, Consumer<T> consumer) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // More chunks than workers so work stealing evens out sparse key ranges
+            return this.forEachParallel(pool, parallelism * 4, pageSize, consumer);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public long forEachParallel(ForkJoinPool pool, int chunks, int pageSize, Consumer<T> consumer) {
+        return this.forEachParallel(pool, chunks, pageSize, null, consumer);
+    }
+
+    // Each chunk and the consumer writes made while walking it commit or roll back together
+    public long forEachParallelInTransaction(ForkJoinPool pool, int chunks, int pageSize, int isolationLevel, Consumer<T> consumer) {
+        return this.forEachParallel(pool, chunks, pageSize, (Integer) isolationLevel, consumer);
+    }
+
+    private long forEachParallel(ForkJoinPool pool, int chunks, int pageSize, Integer isolationLevel, Consumer<T> consumer) {
+        ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<>();
+        try {
+            T model = this.method.newInstance();
+            for (SQLConnection connection : this.connections()) {
+                long[] bounds = this.keyBounds(model, connection);
+                if (bounds == null) {
+                    continue;
+                }
+                long span = bounds[1] - bounds[0] + 1;
+                int count = (int) Math.max(1, Math.min(chunks, span));
+                long step = span / count;
+                long low = bounds[0] - 1;
+                for (int i = 0; i < count; i++) {
+                    long from = low;
+                    long to = i == count - 1 ? bounds[1] : low + step;
+                    tasks.add(pool.submit(() -> isolationLevel == null
+                            ? this.walk(connection, model.getPrimaryKey(), from, to, pageSize, consumer)
+                            : this.walkInTransaction(connection, isolationLevel, model.getPrimaryKey(), from, to, pageSize, consumer)));
+                    low = to;
+                }
+            }
+        } catch (InstantiationException | IllegalAccessException exception) {
+            exception.printStackTrace();
+            this.logs.severe("Error SQL forEachParallel() = " + exception.getMessage());
+        }
+        long processed = 0;
+        for (ForkJoinTask<Long> task : tasks) {
+            processed += task.join();
+        }
+        return processed;
+    }
+
+    private long[] keyBounds(T model, SQLConnection connection) {
+        long[] bounds = new long[2];
+        boolean[] found = {false};
+        connection.query("SELECT MIN(" + model.getPrimaryKey() + "), MAX(" + model.getPrimaryKey() + ") FROM " + model.getTable(), resultSet -> {
+            try {
+                if (resultSet.next() && resultSet.getObject(1) != null) {
+                    bounds[0] = resultSet.getLong(1);
+                    bounds[1] = resultSet.getLong(2);
+                    found[0] = true;
+                }
+            } catch (SQLException exception) {
+                exception.printStackTrace();
+                this.logs.severe("Error SQL keyBounds() = " + exception.getMessage());
+            }
+        });
+        return found[0] ? bounds : null;
+    }
+
+    // Every page is its own autocommit read, the consumer writes are not held in a chunk-long transaction
+    private long walk(SQLConnection connection, String primaryKey, long from, long to, int pageSize, Consumer<T> consumer) {
+        String query = "WHERE " + primaryKey + " > ? AND " + primaryKey + " <= ? ORDER BY " + primaryKey + " LIMIT ?";
+        long processed = 0;
+        long after = from;
+        while (true) {
+            ArrayList<T> page = this.get(connection, query, after, to, pageSize);
+            for (T model : page) {
+                consumer.accept(model);
+            }
+            processed += page.size();
+            if (page.size() < pageSize) {
+                return processed;
+            }
+            after = page.get(page.size() - 1).getLong(primaryKey);
+        }
+    }
+
+    private long walkInTransaction(SQLConnection connection, int isolationLevel, String primaryKey, long from, long to, int pageSize, Consumer<T> consumer) {
+        try {
+            return connection.inTransaction(isolationLevel,
+                    transaction -> this.walk(connection, primaryKey, from, to, pageSize, consumer));
+        } catch (RuntimeException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    public Stream<T> stream(String query, Object... vars) {
+        if (this.shards == null) {
+            return this.stream(MySqlDB.getDB(), query, vars);
+        }
+        // Shards are read one after the other, each cursor is closed before the next one opens
+        return this.connections().stream().flatMap(connection -> this.stream(connection, query, vars));
+    }
+
+    private Stream<T> stream(SQLConnection connection, String query, Object... vars) {
+        try {
+            T model = this.method.newInstance();
+            SQLModelMapper.Plan[] plan = new SQLModelMapper.Plan[1];
+            Selection selection = this.selection(model, connection);
+            // A stream does not keep its rows, lazy columns are fetched per model
+            SQLLazyLoader lazyLoader = this.lazyLoader(selection, model, connection, false);
+            return connection.stream(selection.selectFrom + (query != null ? " " + query : ""),
+                    resultSet -> {
+                        try {
+                            T newModel = this.method.newInstance();
+                            this.bind(newModel, connection);
+                            if (lazyLoader != null) {
+                                lazyLoader.attach(newModel, selection.lazy);
+                            }
+                            if (model.getMapper() != null) {
+                                if (plan[0] == null) {
+                                    plan[0] = model.getMapper().plan(resultSet.getMetaData());
+                                }
+                                newModel.populate(resultSet, plan[0]);
+                            } else {
+                                newModel.populate(resultSet);
+                            }
+                            return newModel;
+                        } catch (InstantiationException | IllegalAccessException exception) {
+                            throw new SQLException(exception);
+                        }
+                    }, vars);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            this.logs.severe("Error SQL stream() = " + exception.getMessage());
+        }
+        return Stream.empty();
+    }
+
+    public Stream<T> streamAll() {
+        return this.stream(null);
+    }
+
+    public CompletableFuture<T> getAsync(int primaryKey, Executor completionExecutor) {
+        return this.connection(primaryKey).supplyAsync(() -> this.get(primaryKey), completionExecutor);
+    }
+
+    public CompletableFuture<T> getAsync(int primaryKey) {
+        return this.getAsync(primaryKey, null);
+    }
+
+    public CompletableFuture<ArrayList<T>> getAsync(Executor completionExecutor, String query, Object... vars) {
+        if (this.shards != null) {
+            return this.getSharded(completionExecutor, query, vars);
+        }
+        return MySqlDB.getDB().supplyAsync(() -> this.get(query, vars), completionExecutor);
+    }
+
+    public CompletableFuture<ArrayList<T>> getAsync(String query, Object... vars) {
+        return this.getAsync(null, query, vars);
+    }
+
+    public CompletableFuture<ArrayList<T>> allAsync(Executor completionExecutor) {
+        if (this.shards != null) {
+            return this.getSharded(completionExecutor, null);
+        }
+        return MySqlDB.getDB().supplyAsync(this::all, completionExecutor);
+    }
+
+    public CompletableFuture<ArrayList<T>> allAsync() {
+        return this.allAsync(null);
+    }
+
     public T getOrInsert(int primaryKey) {
         return this.getOrInsert(new HashMap<>(), primaryKey);
     }
 
     public T getOrInsert(HashMap<String, Object> defaultValues, int primaryKey) {
+        SQLModelCache<T> cache = this.cache;
+        if (cache != null) {
+            T cached = cache.get(primaryKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
             T model = this.method.newInstance();
             this.getOrInsert(model, defaultValues, primaryKey);
+            if (cache != null && model.exists()) {
+                cache.put(primaryKey, model);
+            }
             return model;
         } catch (InstantiationException | IllegalAccessException e) {
             e.printStackTrace();
@@ -100,23 +636,129 @@ public class SQLModels<T extends SQLModel> {
 
     public void getOrInsert(T model, HashMap<String, Object> defaultValues, int primaryKey) {
         try {
-            this.get(model, primaryKey);
-            if (!model.exists()) {
-                model.set(model.getPrimaryKey(), primaryKey);
-                if (defaultValues != null) {
-                    for (Map.Entry<String, Object> entry : defaultValues.entrySet()) {
-                        model.set(entry.getKey(), entry.getValue());
+            model.put(model.getPrimaryKey(), primaryKey);
+            if (defaultValues != null) {
+                for (Map.Entry<String, Object> entry : defaultValues.entrySet()) {
+                    if (!entry.getKey().equals(model.getPrimaryKey())) {
+                        model.put(entry.getKey(), entry.getValue());
                     }
                 }
-                this.insert(model);
-                this.get(model, primaryKey);
             }
+            TreeSet<String> columns = this.insertColumns(model);
+            Object[] vars = new Object[columns.size()];
+            int i = 0;
+            for (String column : columns) {
+                vars[i++] = model.get(column);
+            }
+            SQLConnection connection = this.connection(primaryKey);
+            this.joinTransaction(connection, model);
+            connection.upsert(model.statements().upsert(columns), model.statements().selectByPrimaryKey(), resultSet -> {
+                try {
+                    if (resultSet.next()) {
+                        this.bind(model, connection);
+                        model.populate(resultSet);
+                    }
+                } catch (SQLException exception) {
+                    exception.printStackTrace();
+                    this.logs.severe("Error SQL getOrInsert() = " + exception.getMessage());
+                }
+            }, vars, primaryKey);
         } catch (Exception exception) {
             exception.printStackTrace();
             this.logs.severe("Error SQL getOrInsert() #2 = " + exception.getMessage());
         }
     }
 
+    public ArrayList<T> getOrInsertAll(Collection<Integer> primaryKeys, HashMap<String, Object> defaultValues) {
+        LinkedHashMap<Integer, T> results = new LinkedHashMap<>();
+        LinkedHashMap<SQLConnection, List<Integer>> missing = new LinkedHashMap<>();
+        SQLModelCache<T> cache = this.cache;
+        for (Integer primaryKey : primaryKeys) {
+            if (results.containsKey(primaryKey)) {
+                continue;
+            }
+            T cached = cache != null ? cache.get(primaryKey) : null;
+            results.put(primaryKey, cached);
+            if (cached == null) {
+                missing.computeIfAbsent(this.connection(primaryKey), key -> new ArrayList<>()).add(primaryKey);
+            }
+        }
+        for (Map.Entry<SQLConnection, List<Integer>> entry : missing.entrySet()) {
+            List<Integer> keys = entry.getValue();
+            for (int from = 0; from < keys.size(); from += this.insertChunkSize) {
+                this.upsertChunk(entry.getKey(), keys.subList(from, Math.min(keys.size(), from + this.insertChunkSize)),
+                        defaultValues, results);
+            }
+        }
+        ArrayList<T> models = new ArrayList<>(results.size());
+        for (Map.Entry<Integer, T> entry : results.entrySet()) {
+            if (entry.getValue() != null) {
+                models.add(entry.getValue());
+                if (cache != null) {
+                    cache.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return models;
+    }
+
+    private void upsertChunk(SQLConnection connection, List<Integer> keys, HashMap<String, Object> defaultValues,
+                             Map<Integer, T> results) {
+        try {
+            T template = this.method.newInstance();
+            template.put(template.getPrimaryKey(), keys.get(0));
+            if (defaultValues != null) {
+                for (Map.Entry<String, Object> entry : defaultValues.entrySet()) {
+                    if (!entry.getKey().equals(template.getPrimaryKey())) {
+                        template.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            TreeSet<String> columns = this.insertColumns(template);
+            Object[] vars = new Object[columns.size() * keys.size()];
+            int i = 0;
+            for (Integer primaryKey : keys) {
+                for (String column : columns) {
+                    vars[i++] = column.equals(template.getPrimaryKey()) ? primaryKey : template.get(column);
+                }
+            }
+            SQLStatements statements = template.statements();
+            connection.upsert(statements.upsert(columns, keys.size()), statements.selectByPrimaryKeys(keys.size()), resultSet -> {
+                try {
+                    SQLModelMapper.Plan plan = template.getMapper() != null
+                            ? template.getMapper().plan(resultSet.getMetaData()) : null;
+                    while (resultSet.next()) {
+                        T model = this.method.newInstance();
+                        this.bind(model, connection);
+                        if (plan != null) {
+                            model.populate(resultSet, plan);
+                        } else {
+                            model.populate(resultSet);
+                        }
+                        this.joinTransaction(connection, model);
+                        results.put(model.getInt(model.getPrimaryKey()), model);
+                    }
+                } catch (Exception exception) {
+                    exception.printStackTrace();
+                    this.logs.severe("Error SQL getOrInsertAll() = " + exception.getMessage());
+                }
+            }, vars, keys.toArray());
+            // A multi-row upsert only reports one LAST_INSERT_ID, keys kept out by a secondary UNIQUE key are resolved one by one
+            for (Integer primaryKey : keys) {
+                if (results.get(primaryKey) == null) {
+                    T model = this.method.newInstance();
+                    this.getOrInsert(model, defaultValues, primaryKey);
+                    if (model.exists()) {
+                        results.put(primaryKey, model);
+                    }
+                }
+            }
+        } catch (InstantiationException | IllegalAccessException exception) {
+            exception.printStackTrace();
+            this.logs.severe("Error SQL getOrInsertAll() #2 = " + exception.getMessage());
+        }
+    }
+
     public T getOrInsert(HashMap<String, Object> defaultValues, String query, Object... vars) {
         try {
             T foundRow = this.getFirst(query, vars);
@@ -129,8 +771,21 @@ public class SQLModels<T extends SQLModel> {
                     model.set(entry.getKey(), entry.getValue());
                 }
             }
-            this.insert(model);
-            return this.getOrInsert(defaultValues, query, vars);
+            SQLConnection connection = this.insertTarget(model);
+            if (connection == null) {
+                return null;
+            }
+            // Insert and read back on one pinned connection
+            try {
+                return connection.inTransaction(transaction -> {
+                    this.insert(model);
+                    return this.getFirst(query, vars);
+                });
+            } catch (SQLException exception) {
+                // A concurrent insert made ours fail and roll back, the row is theirs now
+                this.logs.info("getOrInsert() lost an insert race: " + exception.getMessage());
+                return this.getFirst(query, vars);
+            }
         } catch (Exception exception) {
             exception.printStackTrace();
             this.logs.severe("Error SQL getOrInsert() #3 = " + exception.getMessage());
@@ -144,33 +799,213 @@ public class SQLModels<T extends SQLModel> {
 
             String queryString = "DELETE FROM " + model.getTable() + " " + query;
             this.logs.info(queryString);
-            MySqlDB.getDB().execute(queryString, vars);
+            for (SQLConnection connection : this.connections()) {
+                connection.execute(queryString, vars);
+            }
+            if (this.cache != null) {
+                this.cache.invalidateAll();
+            }
         }
         catch (Exception e) {}
     }
 
+    public void delete(int primaryKey) {
+        try {
+            T model = this.method.newInstance();
+
+            this.connection(primaryKey).execute(model.statements().deleteByPrimaryKey(), primaryKey);
+            if (this.cache != null) {
+                this.cache.invalidate(primaryKey);
+            }
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+            this.logs.severe("Error SQL delete() = " + e.getMessage());
+        }
+    }
+
+    private TreeSet<String> insertColumns(T model) {
+        TreeSet<String> columns = new TreeSet<>(model.getColumns().keySet());
+        if (model.get(model.getPrimaryKey()) == null) {
+            columns.remove(model.getPrimaryKey());
+        }
+        return columns;
+    }
+
+    private SQLConnection insertTarget(T model) {
+        if (this.shards == null) {
+            return MySqlDB.getDB();
+        }
+        Object primaryKey = model.get(model.getPrimaryKey());
+        if (primaryKey == null) {
+            this.logs.severe("Error SQL insert() = a sharded model needs its primary key before insert");
+            return null;
+        }
+        SQLConnection connection = this.shards.connectionFor(primaryKey);
+        model.bind(connection);
+        return connection;
+    }
+
     public void insert(T model) {
-        StringBuilder set = new StringBuilder();
-        if (model.get(model.getPrimaryKey()) != null) {
-            set.append("`").append(model.getPrimaryKey()).append("` = ").append(model.getInt(model.getPrimaryKey()));
+        SQLConnection connection = this.insertTarget(model);
+        if (connection == null) {
+            return;
+        }
+        TreeSet<String> columns = this.insertColumns(model);
+        Object[] vars = new Object[columns.size()];
+        int i = 0;
+        for (String column : columns) {
+            vars[i++] = model.get(column);
         }
-        for (Map.Entry<String, Object> entry : model.getColumns().entrySet()) {
-            if (entry.getKey().equals(model.getPrimaryKey())) {
+        String query = model.statements().insert(columns);
+        this.logs.info(query);
+        this.joinTransaction(connection, model);
+        connection.execute(query, vars);
+    }
+
+    public void insertAll(Collection<T> models) {
+        this.insertAll(models.iterator());
+    }
+
+    public void insertAll(Stream<T> models) {
+        try (Stream<T> stream = models) {
+            this.insertAll(stream.iterator());
+        }
+    }
+
+    private void insertAll(Iterator<T> models) {
+        LinkedHashMap<SQLConnection, LinkedHashMap<String, List<T>>> chunk = new LinkedHashMap<>();
+        int pending = 0;
+        while (models.hasNext()) {
+            T model = models.next();
+            SQLConnection connection = this.insertTarget(model);
+            if (connection == null) {
                 continue;
             }
-            if (set.length() > 0) {
-                set.append(", ");
+            chunk.computeIfAbsent(connection, key -> new LinkedHashMap<>())
+                    .computeIfAbsent(String.join(",", this.insertColumns(model)), key -> new ArrayList<>()).add(model);
+            if (++pending >= this.insertChunkSize) {
+                this.insertChunk(chunk);
+                chunk.clear();
+                pending = 0;
+            }
+        }
+        this.insertChunk(chunk);
+    }
+
+    public long bulkLoad(Collection<T> models) {
+        return this.bulkLoad(models.iterator());
+    }
+
+    public long bulkLoad(Stream<T> models) {
+        try (Stream<T> stream = models) {
+            return this.bulkLoad(stream.iterator());
+        }
+    }
+
+    // Every model is written with the columns of the first one, a missing value is loaded as NULL
+    private long bulkLoad(Iterator<T> models) {
+        if (!models.hasNext()) {
+            return 0;
+        }
+        T first = models.next();
+        String table = first.getTable();
+        List<String> columns = new ArrayList<>(this.insertColumns(first));
+        if (this.shards == null) {
+            return MySqlDB.getDB().bulkLoad(table, columns, new Iterator<Object[]>() {
+                private T pending = first;
+
+                @Override
+                public boolean hasNext() {
+                    return this.pending != null || models.hasNext();
+                }
+
+                @Override
+                public Object[] next() {
+                    T model = this.pending != null ? this.pending : models.next();
+                    this.pending = null;
+                    return SQLModels.this.row(model, columns);
+                }
+            });
+        }
+        // Rows are buffered per shard and loaded one chunk at a time
+        HashMap<SQLConnection, ArrayList<Object[]>> chunks = new HashMap<>();
+        long loaded = 0;
+        T model = first;
+        while (model != null) {
+            SQLConnection connection = this.insertTarget(model);
+            if (connection != null) {
+                ArrayList<Object[]> chunk = chunks.computeIfAbsent(connection, key -> new ArrayList<>());
+                chunk.add(this.row(model, columns));
+                if (chunk.size() >= connection.getBulkLoadChunkSize()) {
+                    loaded += connection.bulkLoad(table, columns, chunk.iterator());
+                    chunk.clear();
+                }
+            }
+            model = models.hasNext() ? models.next() : null;
+        }
+        for (Map.Entry<SQLConnection, ArrayList<Object[]>> entry : chunks.entrySet()) {
+            loaded += entry.getKey().bulkLoad(table, columns, entry.getValue().iterator());
+        }
+        return loaded;
+    }
+
+    private Object[] row(T model, List<String> columns) {
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = model.get(columns.get(i));
+        }
+        return row;
+    }
+
+    private void insertChunk(Map<SQLConnection, LinkedHashMap<String, List<T>>> chunk) {
+        for (Map.Entry<SQLConnection, LinkedHashMap<String, List<T>>> entry : chunk.entrySet()) {
+            this.insertShapes(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void insertShapes(SQLConnection connection, Map<String, List<T>> shapes) {
+        for (Map.Entry<String, List<T>> entry : shapes.entrySet()) {
+            List<T> models = entry.getValue();
+            String[] columns = entry.getKey().isEmpty() ? new String[0] : entry.getKey().split(",");
+            String query = models.get(0).statements().insert(Arrays.asList(columns));
+
+            ArrayList<Object[]> batch = new ArrayList<>(models.size());
+            for (T model : models) {
+                Object[] vars = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    vars[i] = model.get(columns[i]);
+                }
+                batch.add(vars);
+            }
+
+            for (T model : models) {
+                this.joinTransaction(connection, model);
             }
-            if (entry.getValue() == null) {
-                set.append("`").append(entry.getKey()).append("` = NULL");
-            } else {
-                String tmp = entry.getValue().toString().replaceAll("'", "''");
-                set.append("`").append(entry.getKey()).append("` = '").append(tmp).append("'");
+            List<Long> keys = connection.executeInsertBatch(query, batch);
+            if (keys.size() != models.size()) {
+                continue;
+            }
+            for (int i = 0; i < models.size(); i++) {
+                T model = models.get(i);
+                if (model.get(model.getPrimaryKey()) == null) {
+                    long key = keys.get(i);
+                    model.put(model.getPrimaryKey(), key <= Integer.MAX_VALUE ? (Object) (int) key : key);
+                }
             }
         }
-        String query = "INSERT INTO " + model.getTable()
-                + " SET " + set.toString();
-        this.logs.info(query);
-        MySqlDB.getDB().execute(query);
+    }
+
+    private static final class Selection {
+
+        private final String selectFrom;
+        private final String selectByPrimaryKey;
+        private final List<String> lazy;
+
+        private Selection(String selectFrom, String selectByPrimaryKey, List<String> lazy) {
+            this.selectFrom = selectFrom;
+            this.selectByPrimaryKey = selectByPrimaryKey;
+            this.lazy = lazy;
+        }
+
     }
 }
@@ -0,0 +1,211 @@
+package fr.xilitra.mysqldb;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public final class SQLPoolProfile {
+
+    private final int maximumPoolSize;
+    private final int minimumIdle;
+    private final long connectionTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long keepaliveTime;
+    private final boolean warmUp;
+    private final long warmUpTimeout;
+    private final List<String> hotStatements;
+
+    private SQLPoolProfile(Builder builder) {
+        this.maximumPoolSize = builder.maximumPoolSize;
+        this.minimumIdle = builder.minimumIdle;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.idleTimeout = builder.idleTimeout;
+        this.maxLifetime = builder.maxLifetime;
+        this.keepaliveTime = builder.keepaliveTime;
+        this.warmUp = builder.warmUp;
+        this.warmUpTimeout = builder.warmUpTimeout;
+        this.hotStatements = Collections.unmodifiableList(new ArrayList<>(builder.hotStatements));
+    }
+
+    // The settings this library always used: the pool empties between bursts and connections live 45 seconds
+    public static SQLPoolProfile standard() {
+        return builder().build();
+    }
+
+    // Fixed size pool kept open and warm, a request never waits for TCP, auth or prepare
+    public static SQLPoolProfile latency() {
+        return builder()
+                .minimumIdle(-1)
+                .connectionTimeout(5, TimeUnit.SECONDS)
+                .maxLifetime(30, TimeUnit.MINUTES)
+                .keepaliveTime(2, TimeUnit.MINUTES)
+                .warmUp(true)
+                .build();
+    }
+
+    // Larger pool for batch and write heavy loads, half of it stays open between bursts
+    public static SQLPoolProfile throughput() {
+        int maximumPoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        return builder()
+                .maximumPoolSize(maximumPoolSize)
+                .minimumIdle(Math.max(1, maximumPoolSize / 2))
+                .idleTimeout(10, TimeUnit.MINUTES)
+                .maxLifetime(30, TimeUnit.MINUTES)
+                .keepaliveTime(5, TimeUnit.MINUTES)
+                .warmUp(true)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder()
+                .maximumPoolSize(this.maximumPoolSize)
+                .minimumIdle(this.minimumIdle)
+                .connectionTimeout(this.connectionTimeout, TimeUnit.MILLISECONDS)
+                .idleTimeout(this.idleTimeout, TimeUnit.MILLISECONDS)
+                .maxLifetime(this.maxLifetime, TimeUnit.MILLISECONDS)
+                .keepaliveTime(this.keepaliveTime, TimeUnit.MILLISECONDS)
+                .warmUp(this.warmUp)
+                .warmUpTimeout(this.warmUpTimeout, TimeUnit.MILLISECONDS);
+        builder.hotStatements.addAll(this.hotStatements);
+        return builder;
+    }
+
+    void apply(HikariConfig config) {
+        if (this.maximumPoolSize > 0) {
+            config.setMaximumPoolSize(this.maximumPoolSize);
+        }
+        config.setMinimumIdle(this.minimumIdle >= 0 ? this.minimumIdle : config.getMaximumPoolSize());
+        config.setConnectionTimeout(this.connectionTimeout);
+        config.setIdleTimeout(this.idleTimeout);
+        config.setMaxLifetime(this.maxLifetime);
+        if (this.keepaliveTime > 0) {
+            config.setKeepaliveTime(this.keepaliveTime);
+        }
+    }
+
+    public int getMaximumPoolSize() {
+        return this.maximumPoolSize;
+    }
+
+    public int getMinimumIdle() {
+        return this.minimumIdle;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return this.connectionTimeout;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return this.idleTimeout;
+    }
+
+    public long getMaxLifetimeMillis() {
+        return this.maxLifetime;
+    }
+
+    public long getKeepaliveTimeMillis() {
+        return this.keepaliveTime;
+    }
+
+    public boolean isWarmUp() {
+        return this.warmUp;
+    }
+
+    public long getWarmUpTimeoutMillis() {
+        return this.warmUpTimeout;
+    }
+
+    public List<String> getHotStatements() {
+        return this.hotStatements;
+    }
+
+    public static class Builder {
+
+        private int maximumPoolSize = 0;
+        private int minimumIdle = 0;
+        private long connectionTimeout = 30000;
+        private long idleTimeout = 35000;
+        private long maxLifetime = 45000;
+        private long keepaliveTime = 0;
+        private boolean warmUp = false;
+        private long warmUpTimeout = 10000;
+        private final LinkedHashSet<String> hotStatements = new LinkedHashSet<>();
+
+        private Builder() {
+        }
+
+        // 0 keeps the HikariCP default
+        public Builder maximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+            return this;
+        }
+
+        // A negative value keeps the pool at its maximum size
+        public Builder minimumIdle(int minimumIdle) {
+            this.minimumIdle = minimumIdle;
+            return this;
+        }
+
+        public Builder connectionTimeout(long connectionTimeout, TimeUnit timeUnit) {
+            this.connectionTimeout = timeUnit.toMillis(connectionTimeout);
+            return this;
+        }
+
+        public Builder idleTimeout(long idleTimeout, TimeUnit timeUnit) {
+            this.idleTimeout = timeUnit.toMillis(idleTimeout);
+            return this;
+        }
+
+        public Builder maxLifetime(long maxLifetime, TimeUnit timeUnit) {
+            this.maxLifetime = timeUnit.toMillis(maxLifetime);
+            return this;
+        }
+
+        // 0 disables keepalive, it must stay below the server wait_timeout and maxLifetime
+        public Builder keepaliveTime(long keepaliveTime, TimeUnit timeUnit) {
+            this.keepaliveTime = timeUnit.toMillis(keepaliveTime);
+            return this;
+        }
+
+        public Builder warmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        // Whole time the init may spend warming the pool, whatever is left is opened lazily
+        public Builder warmUpTimeout(long warmUpTimeout, TimeUnit timeUnit) {
+            this.warmUpTimeout = timeUnit.toMillis(warmUpTimeout);
+            return this;
+        }
+
+        public Builder hotStatement(String query) {
+            this.hotStatements.add(query);
+            return this;
+        }
+
+        public Builder hotStatements(Collection<String> queries) {
+            this.hotStatements.addAll(queries);
+            return this;
+        }
+
+        public Builder hotStatements(SQLStatements statements) {
+            return this.hotStatements(statements.getStatements());
+        }
+
+        public SQLPoolProfile build() {
+            return new SQLPoolProfile(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+package fr.xilitra.mysqldb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SQLQueryCache {
+
+    private static final String TABLE = "`?[\\w$]+`?(?:\\.`?[\\w$]+`?)?";
+    // A table with its optional alias, FROM a x, b y lists every table of the comma join
+    private static final String TABLE_REFERENCE = TABLE + "(?:\\s+(?:AS\\s+)?(?!(?:JOIN|STRAIGHT_JOIN|INNER|CROSS|LEFT|RIGHT"
+            + "|NATURAL|ON|USING|WHERE|GROUP|HAVING|ORDER|LIMIT|UNION|FOR|LOCK|WINDOW|SET)\\b)`?[\\w$]+`?)?";
+    private static final Pattern READ_TABLES = Pattern.compile(
+            "(?i)\\b(?:FROM|JOIN)\\s+(" + TABLE_REFERENCE + "(?:\\s*,\\s*" + TABLE_REFERENCE + ")*)");
+    private static final Pattern UPDATE_TABLES = Pattern.compile(
+            "(?is)^\\s*UPDATE(?:\\s+LOW_PRIORITY)?(?:\\s+IGNORE)?\\s+(.+?)\\s+SET\\s");
+    private static final Pattern MULTI_TABLE_DELETE = Pattern.compile(
+            "(?is)^\\s*DELETE\\s+FROM\\s+" + TABLE + "\\s*(?:,|\\bUSING\\b)");
+    private static final Pattern WRITE_TABLE = Pattern.compile(
+            "(?is)^\\s*(?:INSERT(?:\\s+IGNORE)?\\s+INTO|REPLACE\\s+INTO|UPDATE(?:\\s+IGNORE)?|DELETE\\s+FROM"
+                    + "|TRUNCATE(?:\\s+TABLE)?|ALTER\\s+TABLE|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|LOAD\\s+DATA\\s.*?\\sINTO\\s+TABLE)"
+                    + "\\s+(`?[\\w$]+`?(?:\\.`?[\\w$]+`?)?)");
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<QueryKey, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Set<QueryKey>> byTable = new HashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<QueryKey, CompletableFuture<SQLRowSet>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    SQLQueryCache(long maxBytes, long ttl, TimeUnit timeUnit) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl > 0 ? timeUnit.toNanos(ttl) : 0;
+    }
+
+    SQLRowSet get(String query, Object[] vars, Supplier<SQLRowSet> loader) {
+        String[] tables = readTables(query);
+        if (tables.length == 0) {
+            return loader.get();
+        }
+        QueryKey key = new QueryKey(query, vars);
+        SQLRowSet cached = this.lookup(key);
+        if (cached != null) {
+            this.hits.incrementAndGet();
+            return cached.view();
+        }
+        CompletableFuture<SQLRowSet> future = new CompletableFuture<>();
+        CompletableFuture<SQLRowSet> running = this.loading.putIfAbsent(key, future);
+        if (running != null) {
+            // Another thread is already querying the same key, wait for its result
+            this.coalesced.incrementAndGet();
+            SQLRowSet rowSet = running.join();
+            return rowSet != null ? rowSet.view() : null;
+        }
+        this.misses.incrementAndGet();
+        long epoch = this.epoch.get();
+        long[] generations = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            generations[i] = this.generation(tables[i]).get();
+        }
+        SQLRowSet rowSet = null;
+        try {
+            rowSet = loader.get();
+            if (rowSet != null && this.unchanged(epoch, tables, generations)) {
+                this.store(key, tables, rowSet);
+            }
+        } finally {
+            this.loading.remove(key, future);
+            future.complete(rowSet);
+        }
+        return rowSet != null ? rowSet.view() : null;
+    }
+
+    private boolean unchanged(long epoch, String[] tables, long[] generations) {
+        // A write that ran while we were reading may not be in the result, do not keep it
+        if (this.epoch.get() != epoch) {
+            return false;
+        }
+        for (int i = 0; i < tables.length; i++) {
+            if (this.generation(tables[i]).get() != generations[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AtomicLong generation(String table) {
+        return this.generations.computeIfAbsent(table, key -> new AtomicLong());
+    }
+
+    private synchronized SQLRowSet lookup(QueryKey key) {
+        CachedResult entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (this.ttlNanos > 0 && System.nanoTime() - entry.loadedAt > this.ttlNanos) {
+            this.remove(key, entry);
+            this.expirations.incrementAndGet();
+            return null;
+        }
+        return entry.rowSet;
+    }
+
+    private synchronized void store(QueryKey key, String[] tables, SQLRowSet rowSet) {
+        long weight = rowSet.estimateBytes() + key.estimateBytes();
+        if (weight > this.maxBytes) {
+            return;
+        }
+        CachedResult previous = this.entries.get(key);
+        if (previous != null) {
+            this.remove(key, previous);
+        }
+        this.entries.put(key, new CachedResult(rowSet, tables, weight, System.nanoTime()));
+        this.weight += weight;
+        for (String table : tables) {
+            this.byTable.computeIfAbsent(table, name -> new HashSet<>()).add(key);
+        }
+        Iterator<Map.Entry<QueryKey, CachedResult>> iterator = this.entries.entrySet().iterator();
+        while (this.weight > this.maxBytes && iterator.hasNext()) {
+            Map.Entry<QueryKey, CachedResult> eldest = iterator.next();
+            iterator.remove();
+            this.unlink(eldest.getKey(), eldest.getValue());
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(QueryKey key, CachedResult entry) {
+        this.entries.remove(key);
+        this.unlink(key, entry);
+    }
+
+    private void unlink(QueryKey key, CachedResult entry) {
+        this.weight -= entry.weight;
+        for (String table : entry.tables) {
+            Set<QueryKey> keys = this.byTable.get(table);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                this.byTable.remove(table);
+            }
+        }
+    }
+
+    void invalidate(String writeQuery) {
+        String[] tables = writeTables(writeQuery);
+        if (tables == null) {
+            this.invalidateAll();
+            return;
+        }
+        for (String table : tables) {
+            this.invalidateTable(table);
+        }
+    }
+
+    public void invalidateTable(String table) {
+        table = normalize(table);
+        this.generation(table).incrementAndGet();
+        synchronized (this) {
+            Set<QueryKey> keys = this.byTable.remove(table);
+            if (keys == null) {
+                return;
+            }
+            for (QueryKey key : keys.toArray(new QueryKey[0])) {
+                CachedResult entry = this.entries.get(key);
+                if (entry != null) {
+                    this.remove(key, entry);
+                    this.invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        this.epoch.incrementAndGet();
+        synchronized (this) {
+            this.invalidations.addAndGet(this.entries.size());
+            this.entries.clear();
+            this.byTable.clear();
+            this.weight = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return this.weight;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public long getExpirations() {
+        return this.expirations.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.get() + this.coalesced.get();
+        long total = hits + this.misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    static String[] readTables(String query) {
+        Matcher matcher = READ_TABLES.matcher(query);
+        HashSet<String> tables = new HashSet<>();
+        while (matcher.find()) {
+            for (String reference : matcher.group(1).split(",")) {
+                tables.add(normalize(reference.trim().split("\\s+")[0]));
+            }
+        }
+        return tables.toArray(new String[0]);
+    }
+
+    // Every table a write may change, null when it cannot be told and the whole cache has to go
+    static String[] writeTables(String query) {
+        Matcher update = UPDATE_TABLES.matcher(query);
+        if (update.find()) {
+            // UPDATE a JOIN b and UPDATE a, b may change any of the joined tables
+            String[] tables = readTables("FROM " + update.group(1));
+            return tables.length > 0 ? tables : null;
+        }
+        if (MULTI_TABLE_DELETE.matcher(query).find()) {
+            return null;
+        }
+        Matcher matcher = WRITE_TABLE.matcher(query);
+        return matcher.find() ? new String[]{normalize(matcher.group(1))} : null;
+    }
+
+    private static String normalize(String table) {
+        String name = table.replace("`", "");
+        int dot = name.lastIndexOf('.');
+        return (dot >= 0 ? name.substring(dot + 1) : name).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class QueryKey {
+
+        private final String query;
+        private final Object[] vars;
+        private final int hash;
+
+        private QueryKey(String query, Object[] vars) {
+            this.query = query;
+            this.vars = vars != null ? vars.clone() : new Object[0];
+            this.hash = 31 * query.hashCode() + Arrays.deepHashCode(this.vars);
+        }
+
+        private long estimateBytes() {
+            return 64 + 2L * this.query.length() + 24L * this.vars.length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey key = (QueryKey) other;
+            return this.hash == key.hash && this.query.equals(key.query) && Arrays.deepEquals(this.vars, key.vars);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+    private static final class CachedResult {
+
+        private final SQLRowSet rowSet;
+        private final String[] tables;
+        private final long weight;
+        private final long loadedAt;
+
+        private CachedResult(SQLRowSet rowSet, String[] tables, long weight, long loadedAt) {
+            this.rowSet = rowSet;
+            this.tables = tables;
+            this.weight = weight;
+            this.loadedAt = loadedAt;
+        }
+
+    }
+
+}
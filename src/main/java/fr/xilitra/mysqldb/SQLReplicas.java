@@ -0,0 +1,200 @@
+package fr.xilitra.mysqldb;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+public class SQLReplicas extends Scheduler {
+
+    private final CopyOnWriteArrayList<Replica> replicas = new CopyOnWriteArrayList<>();
+    private final Logger logs = Logger.getLogger("SQLReplicas");
+    private volatile long maxLagSeconds = 10;
+    private volatile int checkTimeoutSeconds = 2;
+    private ScheduledFuture task;
+    private ExecutorService checker;
+
+    void add(SQLConnection connection) {
+        this.replicas.add(new Replica(connection));
+        if (this.task == null) {
+            this.setLagCheckPeriod(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean remove(SQLConnection connection) {
+        return this.replicas.removeIf(replica -> replica.connection == connection);
+    }
+
+    public void setMaxLag(long maxLag, TimeUnit timeUnit) {
+        this.maxLagSeconds = timeUnit.toSeconds(maxLag);
+    }
+
+    public void setCheckTimeout(int checkTimeoutSeconds) {
+        this.checkTimeoutSeconds = Math.max(1, checkTimeoutSeconds);
+    }
+
+    // The scheduled tick only hands the checks out, each replica is read on a checker thread of its own so a
+    // dead one cannot hold the shared Scheduler pool or delay the others
+    public synchronized void setLagCheckPeriod(long period, TimeUnit timeUnit) {
+        if (this.task != null) {
+            this.task.cancel(false);
+        }
+        if (this.checker == null) {
+            this.checker = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "SQLReplicas-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.task = this.scheduleAsyncRepeatingTask(0, period, timeUnit);
+    }
+
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        if (this.checker != null) {
+            this.checker.shutdown();
+            this.checker = null;
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return new ArrayList<>(this.replicas);
+    }
+
+    SQLConnection pick() {
+        Replica best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Replica replica : this.replicas) {
+            if (!replica.isInRotation()) {
+                continue;
+            }
+            int load = replica.getOutstanding();
+            if (load < bestLoad) {
+                best = replica;
+                bestLoad = load;
+            }
+        }
+        return best != null ? best.connection : null;
+    }
+
+    @Override
+    public void run() {
+        ExecutorService checker;
+        synchronized (this) {
+            checker = this.checker;
+        }
+        if (checker == null) {
+            return;
+        }
+        for (Replica replica : this.replicas) {
+            // A check still waiting on its timeout is not stacked with another one
+            if (!replica.checking.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                checker.execute(replica::checkLag);
+            } catch (RejectedExecutionException exception) {
+                replica.checking.set(false);
+            }
+        }
+    }
+
+    public class Replica {
+
+        private final SQLConnection connection;
+        private volatile long lagSeconds = -1;
+        // Out of rotation until a first check has read an acceptable lag
+        private volatile boolean healthy = false;
+        private final AtomicBoolean checking = new AtomicBoolean();
+
+        private Replica(SQLConnection connection) {
+            this.connection = connection;
+        }
+
+        public SQLConnection getConnection() {
+            return this.connection;
+        }
+
+        public long getLagSeconds() {
+            return this.lagSeconds;
+        }
+
+        public boolean isInRotation() {
+            return this.healthy && this.connection.isConnected();
+        }
+
+        public int getOutstanding() {
+            HikariPoolMXBean pool = this.connection.getPoolMXBean();
+            int outstanding = pool != null ? pool.getActiveConnections() + pool.getThreadsAwaitingConnection() : 0;
+            SQLExecutor executor = this.connection.getExecutor();
+            if (executor != null) {
+                outstanding += executor.getQueueDepth();
+            }
+            return outstanding;
+        }
+
+        private void checkLag() {
+            try {
+                this.updateLag();
+            } finally {
+                this.checking.set(false);
+            }
+        }
+
+        private void updateLag() {
+            long lag;
+            try {
+                lag = this.connection.getReplicationLag(SQLReplicas.this.checkTimeoutSeconds);
+            } catch (SQLException exception) {
+                lag = -1;
+                SQLReplicas.this.logs.warning("Cannot read replication status: " + exception.getMessage());
+            }
+            this.lagSeconds = lag;
+            boolean healthy = lag >= 0 && lag <= SQLReplicas.this.maxLagSeconds;
+            if (healthy != this.healthy) {
+                SQLReplicas.this.logs.warning("Replica " + this.connection + (healthy ? " in rotation, lag = " + lag : " out of rotation, lag = " + lag));
+            }
+            this.healthy = healthy;
+        }
+
+    }
+
+    static long readLag(Connection conn) throws SQLException {
+        SQLException failure = null;
+        for (String query : new String[]{"SHOW REPLICA STATUS", "SHOW SLAVE STATUS"}) {
+            try (Statement statement = conn.createStatement();
+                 ResultSet rs = statement.executeQuery(query)) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                for (String column : new String[]{"Seconds_Behind_Source", "Seconds_Behind_Master"}) {
+                    try {
+                        long lag = rs.getLong(column);
+                        return rs.wasNull() ? -1 : lag;
+                    } catch (SQLException ignored) {
+                    }
+                }
+                return -1;
+            } catch (SQLException exception) {
+                failure = exception;
+            }
+        }
+        throw failure;
+    }
+
+}
@@ -3,12 +3,17 @@ package fr.xilitra.mysqldb;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SQLRowSet {
 
-    private HashMap<Integer, ResultSetRow> rows = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private HashMap<String, Integer> columnIndexes = new HashMap<>();
+    private Column[] columns = new Column[0];
     private int index = -1;
     private int size;
     private ResultSetMetaData metadata;
@@ -18,32 +23,54 @@ public class SQLRowSet {
             java.sql.ResultSetMetaData meta = req.getMetaData();
             int columnCount = meta.getColumnCount();
             String tableName = meta.getTableName(1);
-            int indexRows = 0;
-            int maxColumns = columnCount;
             HashMap<Integer, String> columnsName = new HashMap<>();
 
+            this.columns = new Column[columnCount];
+            for (int column = 1; column <= columnCount; ++column) {
+                String name = meta.getColumnName(column);
+                columnsName.put(column, name);
+                this.columnIndexes.put(name, column - 1);
+                this.columns[column - 1] = Column.of(meta.getColumnType(column), meta.isSigned(column));
+            }
+
+            int indexRows = 0;
             while (req.next()) {
-                HashMap<String, ResultSetElement> columns = new HashMap<>();
-                for (int column = 1; column <= columnCount; ++column) {
-                    if (indexRows == 0) {
-                        columnsName.put(column, meta.getColumnName(column));
-                    }
-                    columns.put(meta.getColumnName(column),
-                            new ResultSetElement(req.getObject(column), meta.isSigned(column)));
+                for (int column = 0; column < columnCount; ++column) {
+                    this.columns[column].read(req, column + 1, indexRows);
                 }
-                ResultSetRow row = new ResultSetRow(columns);
-                this.rows.put(indexRows++, row);
+                indexRows++;
             }
             if (indexRows == 0) {
                 this.index = -42;
             }
             this.size = indexRows;
-            this.metadata = new ResultSetMetaData(tableName, maxColumns, columnsName);
+            this.metadata = new ResultSetMetaData(tableName, columnCount, columnsName);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    private SQLRowSet(SQLRowSet source) {
+        this.columnIndexes = source.columnIndexes;
+        this.columns = source.columns;
+        this.size = source.size;
+        this.metadata = source.metadata;
+        this.index = source.size == 0 ? -42 : -1;
+    }
+
+    // Shares the column vectors with its own cursor, so one result can be read by several threads
+    SQLRowSet view() {
+        return new SQLRowSet(this);
+    }
+
+    long estimateBytes() {
+        long bytes = 64 + 48L * this.columnIndexes.size();
+        for (Column column : this.columns) {
+            bytes += column.estimateBytes(this.size);
+        }
+        return bytes;
+    }
+
     public boolean first() {
         if (this.index == -42) {
             return false;
@@ -64,6 +91,10 @@ public class SQLRowSet {
         return this.index + 1;
     }
 
+    public int size() {
+        return this.size;
+    }
+
     public boolean beforeFirst() {
         if (this.index == -42) {
             return false;
@@ -74,53 +105,60 @@ public class SQLRowSet {
 
     public boolean next() {
         this.index++;
-        return this.rows.containsKey(this.index);
+        return this.isValidRow();
     }
 
     public HashMap<String, ResultSetElement> getColumns() {
-        return this.rows.containsKey(this.index) ? this.rows.get(this.index).getColumns() : null;
+        if (!this.isValidRow()) {
+            return null;
+        }
+        HashMap<String, ResultSetElement> elements = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : this.columnIndexes.entrySet()) {
+            Column column = this.columns[entry.getValue()];
+            elements.put(entry.getKey(), new ResultSetElement(column.get(this.index), column.signed));
+        }
+        return elements;
     }
 
     public HashMap<String, Object> getColumnsObjects() {
         HashMap<String, Object> objects = new HashMap<>();
-        for (Map.Entry<String, ResultSetElement> entry : this.rows.get(this.index).getColumns().entrySet()) {
-            objects.put(entry.getKey(), entry.getValue().getValue());
+        for (Map.Entry<String, Integer> entry : this.columnIndexes.entrySet()) {
+            objects.put(entry.getKey(), this.columns[entry.getValue()].get(this.index));
         }
         return objects;
     }
 
     public Object getObject(String columnName) {
-        if (this.isInvalidColumn(columnName, false)) {
+        Column column = this.getColumn(columnName, false);
+        if (column == null) {
             return null;
         }
-        return this.rows.get(this.index).getColumns().get(columnName);
+        return new ResultSetElement(column.get(this.index), column.signed);
     }
 
     public String getString(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return null;
         }
-        return this.rows.get(this.index).getColumns().get(columnName).getValue().toString();
+        return column.getString(this.index);
     }
 
     public Timestamp getTimestamp(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
-            return null;
-        }
-        try {
-            return (Timestamp) this.rows.get(this.index).getColumns().get(columnName).getValue();
-        } catch (NumberFormatException exception) {
-            exception.printStackTrace();
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return null;
         }
+        return (Timestamp) column.get(this.index);
     }
 
     public int getInt(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return -1;
         }
         try {
-            return Integer.parseInt(this.rows.get(this.index).getColumns().get(columnName).getValue().toString());
+            return column.getInt(this.index);
         } catch (NumberFormatException exception) {
             exception.printStackTrace();
             return -1;
@@ -128,11 +166,12 @@ public class SQLRowSet {
     }
 
     public long getLong(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return -1L;
         }
         try {
-            return Long.parseLong(this.rows.get(this.index).getColumns().get(columnName).getValue().toString());
+            return column.getLong(this.index);
         } catch (NumberFormatException exception) {
             exception.printStackTrace();
             return -1L;
@@ -140,11 +179,12 @@ public class SQLRowSet {
     }
 
     public double getDouble(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return -1;
         }
         try {
-            return Double.parseDouble(this.rows.get(this.index).getColumns().get(columnName).getValue().toString());
+            return column.getDouble(this.index);
         } catch (NumberFormatException exception) {
             exception.printStackTrace();
             return -1L;
@@ -152,11 +192,12 @@ public class SQLRowSet {
     }
 
     public byte getByte(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return (byte) -1;
         }
         try {
-            return Byte.parseByte(this.rows.get(this.index).getColumns().get(columnName).getValue().toString());
+            return column.getByte(this.index);
         } catch (NumberFormatException exception) {
             exception.printStackTrace();
             return (byte) -1;
@@ -164,30 +205,38 @@ public class SQLRowSet {
     }
 
     public byte[] getBytes(String columnName) {
-        if (this.isInvalidColumn(columnName, true)) {
+        Column column = this.getColumn(columnName, true);
+        if (column == null) {
             return new byte[0];
         }
-        return (byte[]) this.rows.get(this.index).getColumns().get(columnName).getValue();
+        return (byte[]) column.get(this.index);
     }
 
     public boolean isSigned(String columnName) {
-        if (this.isInvalidColumn(columnName, false)) {
+        Column column = this.getColumn(columnName, false);
+        if (column == null) {
             return false;
         }
-        return this.rows.get(this.index).getColumns().get(columnName).isSigned();
+        return column.signed;
+    }
+
+    private boolean isValidRow() {
+        return this.index >= 0 && this.index < this.size;
     }
 
-    private boolean isInvalidColumn(String columnName, boolean checkNotNull) {
-        if (!this.rows.containsKey(this.index)) {
-            return true;
+    private Column getColumn(String columnName, boolean checkNotNull) {
+        if (!this.isValidRow()) {
+            return null;
         }
-        if (!this.rows.get(this.index).getColumns().containsKey(columnName)) {
-            return true;
+        Integer position = this.columnIndexes.get(columnName);
+        if (position == null) {
+            return null;
         }
-        if (checkNotNull && this.rows.get(this.index).getColumns().get(columnName).getValue() == null) {
-            return true;
+        Column column = this.columns[position];
+        if (checkNotNull && column.isNull(this.index)) {
+            return null;
         }
-        return false;
+        return column;
     }
 
     public ResultSetMetaData getMetaData() {
@@ -208,22 +257,16 @@ public class SQLRowSet {
             this.columnNames = columnsNames;
         }
 
-        public String getColumnName(int columnindex) {
-            return this.columnNames.get(columnindex);
+        public String getTableName() {
+            return this.tableName;
         }
 
-    }
-
-    public static class ResultSetRow {
-
-        private HashMap<String, ResultSetElement> columns;
-
-        private ResultSetRow(HashMap<String, ResultSetElement> columns) {
-            this.columns = columns;
+        public int getColumnCount() {
+            return this.columnCount;
         }
 
-        public HashMap<String, ResultSetElement> getColumns() {
-            return this.columns;
+        public String getColumnName(int columnindex) {
+            return this.columnNames.get(columnindex);
         }
 
     }
@@ -253,4 +296,270 @@ public class SQLRowSet {
 
     }
 
+    abstract static class Column {
+
+        final boolean signed;
+
+        private long[] nulls = new long[1];
+
+        Column(boolean signed) {
+            this.signed = signed;
+        }
+
+        static Column of(int sqlType, boolean signed) {
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                    return new IntColumn(signed);
+                case Types.INTEGER:
+                    return signed ? new IntColumn(true) : new LongColumn(false);
+                case Types.BIGINT:
+                    return signed ? new LongColumn(true) : new ObjectColumn(false);
+                case Types.DOUBLE:
+                    return new DoubleColumn(signed);
+                default:
+                    return new ObjectColumn(signed);
+            }
+        }
+
+        abstract void read(ResultSet resultSet, int column, int row) throws SQLException;
+
+        abstract Object get(int row);
+
+        abstract long estimateBytes(int rows);
+
+        long nullsBytes() {
+            return 16 + 8L * this.nulls.length;
+        }
+
+        String getString(int row) {
+            return this.get(row).toString();
+        }
+
+        int getInt(int row) {
+            return Integer.parseInt(this.getString(row));
+        }
+
+        long getLong(int row) {
+            return Long.parseLong(this.getString(row));
+        }
+
+        double getDouble(int row) {
+            return Double.parseDouble(this.getString(row));
+        }
+
+        byte getByte(int row) {
+            return Byte.parseByte(this.getString(row));
+        }
+
+        boolean isNull(int row) {
+            int word = row >>> 6;
+            return word < this.nulls.length && (this.nulls[word] & (1L << row)) != 0;
+        }
+
+        void setNull(int row) {
+            int word = row >>> 6;
+            if (word >= this.nulls.length) {
+                this.nulls = Arrays.copyOf(this.nulls, Math.max(word + 1, this.nulls.length * 2));
+            }
+            this.nulls[word] |= 1L << row;
+        }
+
+        static int grow(int capacity, int row) {
+            return Math.max(row + 1, capacity + (capacity >> 1));
+        }
+
+    }
+
+    static final class IntColumn extends Column {
+
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        IntColumn(boolean signed) {
+            super(signed);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            if (row >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+            }
+            this.values[row] = resultSet.getInt(column);
+            if (resultSet.wasNull()) {
+                this.setNull(row);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return this.isNull(row) ? null : this.values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return Integer.toString(this.values[row]);
+        }
+
+        @Override
+        int getInt(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            return 16 + 4L * this.values.length + this.nullsBytes();
+        }
+
+    }
+
+    static final class LongColumn extends Column {
+
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(boolean signed) {
+            super(signed);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            if (row >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+            }
+            this.values[row] = resultSet.getLong(column);
+            if (resultSet.wasNull()) {
+                this.setNull(row);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return this.isNull(row) ? null : this.values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return Long.toString(this.values[row]);
+        }
+
+        @Override
+        int getInt(int row) {
+            long value = this.values[row];
+            if (value != (int) value) {
+                throw new NumberFormatException("For input string: \"" + value + "\"");
+            }
+            return (int) value;
+        }
+
+        @Override
+        long getLong(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            return 16 + 8L * this.values.length + this.nullsBytes();
+        }
+
+    }
+
+    static final class DoubleColumn extends Column {
+
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn(boolean signed) {
+            super(signed);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            if (row >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+            }
+            this.values[row] = resultSet.getDouble(column);
+            if (resultSet.wasNull()) {
+                this.setNull(row);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return this.isNull(row) ? null : this.values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return Double.toString(this.values[row]);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            return 16 + 8L * this.values.length + this.nullsBytes();
+        }
+
+    }
+
+    static final class ObjectColumn extends Column {
+
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        ObjectColumn(boolean signed) {
+            super(signed);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            if (row >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.values.length, row));
+            }
+            this.values[row] = resultSet.getObject(column);
+        }
+
+        @Override
+        Object get(int row) {
+            return this.values[row];
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return this.values[row] == null;
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            long bytes = 16 + 8L * this.values.length + this.nullsBytes();
+            for (int row = 0; row < rows; row++) {
+                Object value = this.values[row];
+                if (value instanceof String) {
+                    bytes += 40 + 2L * ((String) value).length();
+                } else if (value instanceof byte[]) {
+                    bytes += 16 + ((byte[]) value).length;
+                } else if (value != null) {
+                    bytes += 24;
+                }
+            }
+            return bytes;
+        }
+
+    }
+
 }
@@ -0,0 +1,98 @@
+package fr.xilitra.mysqldb;
+
+import fr.xilitra.mysqldb.exception.DBException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class SQLShards {
+
+    private final int virtualNodes;
+    private final ArrayList<String> names = new ArrayList<>();
+    private volatile TreeMap<Long, String> ring = new TreeMap<>();
+
+    public SQLShards(String... names) throws DBException {
+        this(160, names);
+    }
+
+    public SQLShards(int virtualNodes, String... names) throws DBException {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        for (String name : names) {
+            this.addShard(name);
+        }
+    }
+
+    public synchronized void addShard(String name) throws DBException {
+        if (MySqlDB.getDB(name) == null) {
+            throw new DBException();
+        }
+        if (this.names.contains(name)) {
+            return;
+        }
+        TreeMap<Long, String> ring = new TreeMap<>(this.ring);
+        for (int i = 0; i < this.virtualNodes; i++) {
+            ring.put(hash(name + "#" + i), name);
+        }
+        this.names.add(name);
+        this.ring = ring;
+    }
+
+    public synchronized boolean removeShard(String name) {
+        if (!this.names.remove(name)) {
+            return false;
+        }
+        TreeMap<Long, String> ring = new TreeMap<>(this.ring);
+        ring.values().removeIf(name::equals);
+        this.ring = ring;
+        return true;
+    }
+
+    public synchronized List<String> getShards() {
+        return Collections.unmodifiableList(new ArrayList<>(this.names));
+    }
+
+    public String shardFor(Object primaryKey) {
+        TreeMap<Long, String> ring = this.ring;
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(String.valueOf(primaryKey)));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public SQLConnection connectionFor(Object primaryKey) {
+        String name = this.shardFor(primaryKey);
+        return name != null ? MySqlDB.getDB(name) : null;
+    }
+
+    public List<SQLConnection> getConnections() {
+        ArrayList<SQLConnection> connections = new ArrayList<>();
+        for (String name : this.getShards()) {
+            SQLConnection connection = MySqlDB.getDB(name);
+            if (connection != null) {
+                connections.add(connection);
+            }
+        }
+        return connections;
+    }
+
+    // 64-bit FNV-1a followed by the murmur3 finalizer, keys such as "41" and "42" land far apart on the ring
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
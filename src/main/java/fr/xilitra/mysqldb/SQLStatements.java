@@ -0,0 +1,145 @@
+package fr.xilitra.mysqldb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class SQLStatements {
+
+    private static final ConcurrentHashMap<String, SQLStatements> catalogs = new ConcurrentHashMap<>();
+
+    private final String table;
+    private final String primaryKey;
+    private final String selectByPrimaryKey;
+    private final String deleteByPrimaryKey;
+    private final ConcurrentHashMap<String, String> updates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> increments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> inserts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> upserts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> selects = new ConcurrentHashMap<>();
+
+    private SQLStatements(String table, String primaryKey) {
+        this.table = table;
+        this.primaryKey = primaryKey;
+        this.selectByPrimaryKey = "SELECT * FROM " + table + " WHERE " + primaryKey + " = ?";
+        this.deleteByPrimaryKey = "DELETE FROM " + table + " WHERE " + primaryKey + " = ?";
+    }
+
+    public static SQLStatements of(String table, String primaryKey) {
+        return catalogs.computeIfAbsent(table + "#" + primaryKey, key -> new SQLStatements(table, primaryKey));
+    }
+
+    public static SQLStatements of(SQLModel model) {
+        return of(model.getTable(), model.getPrimaryKey());
+    }
+
+    public String getTable() {
+        return this.table;
+    }
+
+    public String getPrimaryKey() {
+        return this.primaryKey;
+    }
+
+    public String selectByPrimaryKey() {
+        return this.selectByPrimaryKey;
+    }
+
+    public String deleteByPrimaryKey() {
+        return this.deleteByPrimaryKey;
+    }
+
+    public String update(String columnName) {
+        return this.updates.computeIfAbsent(columnName, column -> "UPDATE " + this.table
+                + " SET " + column + " = ? WHERE " + this.primaryKey + " = ?");
+    }
+
+    public String increment(String columnName) {
+        return this.increments.computeIfAbsent(columnName, column -> "UPDATE " + this.table
+                + " SET " + column + " = " + column + " + ? WHERE " + this.primaryKey + " = ?");
+    }
+
+    public String insert(Collection<String> columns) {
+        return this.inserts.computeIfAbsent(String.join(",", columns), key -> {
+            StringBuilder names = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (String column : columns) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                    values.append(", ");
+                }
+                names.append("`").append(column).append("`");
+                values.append("?");
+            }
+            return "INSERT INTO " + this.table + " (" + names + ") VALUES (" + values + ")";
+        });
+    }
+
+    public String upsert(Collection<String> columns) {
+        // The no-op update keeps the existing row untouched, the statement only inserts missing keys.
+        // LAST_INSERT_ID(pk) reports the key of the row that was kept, even when a secondary UNIQUE key collided
+        return this.upserts.computeIfAbsent(String.join(",", columns), key -> this.insert(columns)
+                + " ON DUPLICATE KEY UPDATE `" + this.primaryKey + "` = LAST_INSERT_ID(`" + this.primaryKey + "`)");
+    }
+
+    public String upsert(Collection<String> columns, int rows) {
+        String upsert = this.upsert(columns);
+        if (rows <= 1) {
+            return upsert;
+        }
+        int values = upsert.lastIndexOf(" VALUES (");
+        int end = upsert.indexOf(')', values) + 1;
+        String row = upsert.substring(values + 8, end);
+        StringBuilder query = new StringBuilder(upsert.length() + (row.length() + 2) * rows);
+        query.append(upsert, 0, end);
+        for (int i = 1; i < rows; i++) {
+            query.append(", ").append(row);
+        }
+        return query.append(upsert, end, upsert.length()).toString();
+    }
+
+    public String select(Collection<String> columns) {
+        return this.selects.computeIfAbsent(String.join(",", columns), key -> {
+            StringBuilder query = new StringBuilder("SELECT ");
+            for (String column : columns) {
+                if (query.length() > 7) {
+                    query.append(", ");
+                }
+                query.append("`").append(column).append("`");
+            }
+            return query.append(" FROM ").append(this.table).toString();
+        });
+    }
+
+    public String selectByPrimaryKeys(int count) {
+        if (count <= 1) {
+            return this.selectByPrimaryKey;
+        }
+        return this.selectByPrimaryKeys("SELECT * FROM " + this.table, count);
+    }
+
+    public String selectByPrimaryKeys(Collection<String> columns, int count) {
+        return this.selectByPrimaryKeys(this.select(columns), count);
+    }
+
+    private String selectByPrimaryKeys(String select, int count) {
+        StringBuilder query = new StringBuilder(select)
+                .append(" WHERE ").append(this.primaryKey).append(" IN (?");
+        for (int i = 1; i < count; i++) {
+            query.append(", ?");
+        }
+        return query.append(")").toString();
+    }
+
+    public Collection<String> getStatements() {
+        ArrayList<String> statements = new ArrayList<>();
+        statements.add(this.selectByPrimaryKey);
+        statements.add(this.deleteByPrimaryKey);
+        statements.addAll(this.updates.values());
+        statements.addAll(this.increments.values());
+        statements.addAll(this.inserts.values());
+        statements.addAll(this.upserts.values());
+        return statements;
+    }
+
+}
@@ -0,0 +1,109 @@
+package fr.xilitra.mysqldb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+public class SQLTransaction {
+
+    private final SQLConnection owner;
+    private final Connection connection;
+    private final Connection handle;
+    private final int isolationLevel;
+    private final ArrayList<SQLModel> touched = new ArrayList<>();
+    private final LinkedHashSet<String> written = new LinkedHashSet<>();
+    private boolean rollbackOnly = false;
+    private SQLException cause = null;
+
+    SQLTransaction(SQLConnection owner, Connection connection, int isolationLevel) {
+        this.owner = owner;
+        this.connection = connection;
+        this.isolationLevel = isolationLevel;
+        // Statements inside the transaction close "their" connection in try-with-resources, the pinned one must stay open
+        this.handle = (Connection) Proxy.newProxyInstance(SQLTransaction.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(this.connection, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                });
+    }
+
+    Connection getHandle() {
+        return this.handle;
+    }
+
+    Connection getPinnedConnection() {
+        return this.connection;
+    }
+
+    void touch(SQLModel model) {
+        this.touched.add(model);
+    }
+
+    void written(String query) {
+        this.written.add(query);
+    }
+
+    void onCommit() {
+        // Readers outside the transaction could cache pre-commit rows until now
+        for (String query : this.written) {
+            this.owner.invalidate(query);
+        }
+        this.written.clear();
+    }
+
+    void onRollback() {
+        for (SQLModel model : this.touched) {
+            SQLModelCache.invalidate(model);
+        }
+        this.touched.clear();
+    }
+
+    public SQLConnection getConnection() {
+        return this.owner;
+    }
+
+    public int getIsolationLevel() {
+        return this.isolationLevel;
+    }
+
+    public void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    void setRollbackOnly(SQLException cause) {
+        if (this.cause == null) {
+            this.cause = cause;
+        }
+        this.rollbackOnly = true;
+    }
+
+    SQLException rollbackException() {
+        if (this.cause == null) {
+            return new SQLException("Transaction rolled back: marked rollback-only");
+        }
+        return new SQLException("Transaction rolled back: " + this.cause.getMessage(),
+                this.cause.getSQLState(), this.cause.getErrorCode(), this.cause);
+    }
+
+    public boolean isRollbackOnly() {
+        return this.rollbackOnly;
+    }
+
+    public SQLRowSet query(String query, Object... vars) {
+        return this.owner.query(query, vars);
+    }
+
+    public void execute(String query, Object... vars) {
+        this.owner.execute(query, vars);
+    }
+
+}
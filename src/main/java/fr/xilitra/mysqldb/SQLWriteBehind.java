@@ -0,0 +1,294 @@
+package fr.xilitra.mysqldb;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class SQLWriteBehind extends Scheduler {
+
+    private final SQLConnection connection;
+    // One entry per row, copies of a model handed out by the caches and the mirror all land on it
+    private final ConcurrentHashMap<RowKey, PendingUpdate> dirty = new ConcurrentHashMap<>();
+    private final Logger logs = Logger.getLogger("SQLWriteBehind");
+    private volatile SQLWriteBehind movedTo = null;
+    private long periodNanos;
+    private ScheduledFuture task;
+
+    SQLWriteBehind(SQLConnection connection) {
+        this.connection = connection;
+    }
+
+    void start(long period, TimeUnit timeUnit) {
+        this.periodNanos = timeUnit.toNanos(period);
+        this.task = this.scheduleAsyncRepeatingTask(period, period, timeUnit);
+    }
+
+    List<SQLModel> stop() {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        if (this.flush()) {
+            return Collections.emptyList();
+        }
+        List<SQLModel> unwritten = new ArrayList<>();
+        StringBuilder updates = new StringBuilder();
+        for (PendingUpdate pending : this.dirty.values()) {
+            unwritten.add(pending.model);
+            updates.append(updates.length() > 0 ? ", " : "").append(pending.table).append("#").append(pending.primaryKey);
+        }
+        this.logs.severe("Write-behind stopped with " + unwritten.size() + " updates not written: " + updates);
+        return unwritten;
+    }
+
+    long getPeriodNanos() {
+        return this.periodNanos;
+    }
+
+    // Failover: the updates not written yet go to the connection that now takes the traffic
+    synchronized void handOver(SQLWriteBehind target) {
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        this.movedTo = target;
+        int moved = 0;
+        for (RowKey key : this.dirty.keySet()) {
+            PendingUpdate pending = this.dirty.remove(key);
+            if (pending != null) {
+                target.requeue(key, pending);
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            this.logs.warning("Moved " + moved + " write-behind updates to " + target.connection);
+        }
+    }
+
+    public int getPendingCount() {
+        return this.dirty.size();
+    }
+
+    void markSet(SQLModel model, Object primaryKey, String columnName, Object value) {
+        SQLWriteBehind movedTo = this.movedTo;
+        if (movedTo != null) {
+            movedTo.markSet(model, primaryKey, columnName, value);
+            return;
+        }
+        this.dirty.compute(new RowKey(model.getTable(), primaryKey), (key, pending) -> {
+            if (pending == null) {
+                pending = new PendingUpdate(model.getTable(), model.getPrimaryKey(), primaryKey);
+            }
+            pending.model = model;
+            pending.deltas.remove(columnName);
+            pending.values.put(columnName, value);
+            return pending;
+        });
+    }
+
+    void markAdd(SQLModel model, Object primaryKey, String columnName, long delta) {
+        SQLWriteBehind movedTo = this.movedTo;
+        if (movedTo != null) {
+            movedTo.markAdd(model, primaryKey, columnName, delta);
+            return;
+        }
+        this.dirty.compute(new RowKey(model.getTable(), primaryKey), (key, pending) -> {
+            if (pending == null) {
+                pending = new PendingUpdate(model.getTable(), model.getPrimaryKey(), primaryKey);
+            }
+            pending.model = model;
+            pending.add(columnName, delta);
+            return pending;
+        });
+    }
+
+    void discard(SQLModel model, String columnName) {
+        SQLWriteBehind movedTo = this.movedTo;
+        if (movedTo != null) {
+            movedTo.discard(model, columnName);
+            return;
+        }
+        this.dirty.computeIfPresent(RowKey.of(model), (key, pending) -> {
+            pending.values.remove(columnName);
+            pending.deltas.remove(columnName);
+            return pending.isEmpty() ? null : pending;
+        });
+    }
+
+    @Override
+    public void run() {
+        this.flush();
+    }
+
+    public boolean flush(SQLModel model) {
+        RowKey key = RowKey.of(model);
+        PendingUpdate pending = this.dirty.remove(key);
+        if (pending == null) {
+            return true;
+        }
+        return this.write(Collections.singletonMap(key, pending));
+    }
+
+    public synchronized boolean flush() {
+        if (this.dirty.isEmpty()) {
+            return true;
+        }
+        LinkedHashMap<RowKey, PendingUpdate> taken = new LinkedHashMap<>();
+        for (RowKey key : this.dirty.keySet()) {
+            PendingUpdate pending = this.dirty.remove(key);
+            if (pending != null) {
+                taken.put(key, pending);
+            }
+        }
+        return this.write(taken);
+    }
+
+    private boolean write(Map<RowKey, PendingUpdate> taken) {
+        LinkedHashMap<String, List<Object[]>> batches = new LinkedHashMap<>();
+        for (PendingUpdate pending : taken.values()) {
+            pending.addTo(batches);
+        }
+        if (batches.isEmpty()) {
+            return true;
+        }
+        try {
+            // All or nothing, a partly applied flush would apply its increments twice when retried
+            this.connection.inTransaction(transaction -> {
+                Map<String, int[]> results = this.connection.executeBatch(batches);
+                if (results.size() != batches.size()) {
+                    throw new SQLException("Write-behind batch failed");
+                }
+                return null;
+            });
+            return true;
+        } catch (Exception exception) {
+            this.logs.severe("Error when flushing " + taken.size() + " write-behind updates, they will be retried: " + exception.getMessage());
+            exception.printStackTrace();
+            for (Map.Entry<RowKey, PendingUpdate> entry : taken.entrySet()) {
+                this.requeue(entry.getKey(), entry.getValue());
+            }
+            return false;
+        }
+    }
+
+    private void requeue(RowKey key, PendingUpdate failed) {
+        // Updates made since the flush took the entry are newer than the failed ones and win over them
+        this.dirty.merge(key, failed, (newer, older) -> older.absorb(newer));
+    }
+
+    private static final class RowKey {
+
+        private final String table;
+        private final Object primaryKey;
+
+        private RowKey(String table, Object primaryKey) {
+            this.table = table;
+            // Integer, Long, Short and Byte keys of one row must land on the same entry
+            this.primaryKey = primaryKey instanceof Integer || primaryKey instanceof Short || primaryKey instanceof Byte
+                    ? (Object) ((Number) primaryKey).longValue() : primaryKey;
+        }
+
+        private static RowKey of(SQLModel model) {
+            return new RowKey(model.getTable(), model.get(model.getPrimaryKey()));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RowKey)) {
+                return false;
+            }
+            RowKey key = (RowKey) other;
+            return this.table.equals(key.table) && Objects.equals(this.primaryKey, key.primaryKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.table.hashCode() + Objects.hashCode(this.primaryKey);
+        }
+
+    }
+
+    private static class PendingUpdate {
+
+        private final String table;
+        private final String primaryKeyName;
+        private final Object primaryKey;
+        private final LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Long> deltas = new LinkedHashMap<>();
+        // Last instance that changed the row, reported by stop() when the update could not be written
+        private SQLModel model;
+
+        private PendingUpdate(String table, String primaryKeyName, Object primaryKey) {
+            this.table = table;
+            this.primaryKeyName = primaryKeyName;
+            this.primaryKey = primaryKey;
+        }
+
+        private PendingUpdate absorb(PendingUpdate newer) {
+            for (Map.Entry<String, Object> entry : newer.values.entrySet()) {
+                this.deltas.remove(entry.getKey());
+                this.values.put(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : newer.deltas.entrySet()) {
+                this.add(entry.getKey(), entry.getValue());
+            }
+            this.model = newer.model;
+            return this;
+        }
+
+        // A delta on a column already set moves the pending value, whichever copy of the row it came from
+        private void add(String columnName, long delta) {
+            Object value = this.values.get(columnName);
+            if (value == null && !this.values.containsKey(columnName)) {
+                this.deltas.merge(columnName, delta, Long::sum);
+            } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                this.values.put(columnName, new BigDecimal(value.toString()).add(BigDecimal.valueOf(delta)));
+            } else if (value instanceof Number) {
+                this.values.put(columnName, ((Number) value).longValue() + delta);
+            } else {
+                this.values.put(columnName, delta);
+            }
+        }
+
+        private boolean isEmpty() {
+            return this.values.isEmpty() && this.deltas.isEmpty();
+        }
+
+        private void addTo(Map<String, List<Object[]>> batches) {
+            if (this.isEmpty()) {
+                return;
+            }
+            StringBuilder query = new StringBuilder("UPDATE ").append(this.table).append(" SET ");
+            Object[] vars = new Object[this.values.size() + this.deltas.size() + 1];
+            int i = 0;
+            for (Map.Entry<String, Object> entry : this.values.entrySet()) {
+                if (i > 0) {
+                    query.append(", ");
+                }
+                query.append(entry.getKey()).append(" = ?");
+                vars[i++] = entry.getValue();
+            }
+            for (Map.Entry<String, Long> entry : this.deltas.entrySet()) {
+                if (i > 0) {
+                    query.append(", ");
+                }
+                query.append(entry.getKey()).append(" = ").append(entry.getKey()).append(" + ?");
+                vars[i++] = entry.getValue();
+            }
+            query.append(" WHERE ").append(this.primaryKeyName).append(" = ?");
+            vars[i] = this.primaryKey;
+            batches.computeIfAbsent(query.toString(), key -> new ArrayList<>()).add(vars);
+        }
+
+    }
+
+}
@@ -5,10 +5,69 @@ import java.util.concurrent.*;
 public abstract class Scheduler implements Runnable{
 
     private static ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
-    private static ExecutorService executor = Executors.newCachedThreadPool();
+    private static volatile ExecutorService executor = Executors.newCachedThreadPool();
+    private static volatile Semaphore permits = null;
+    private static volatile boolean virtual = false;
+    private static volatile int maxConcurrentTasks = 0;
 
     public static void runTask(Runnable run) {
-        executor.submit(run);
+        Semaphore permits = Scheduler.permits;
+        if (permits == null) {
+            executor.submit(run);
+            return;
+        }
+        executor.submit(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                run.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    // Bounded by what the registered pools can serve, the bound follows databases registered later
+    public static boolean useVirtualThreads() {
+        return useVirtualThreads(0);
+    }
+
+    // The JDBC drivers do their socket I/O inside synchronized blocks, which pins the carrier thread. More running
+    // tasks than carriers would pin them all and stall every other virtual thread, so the permits never go above
+    // carrierParallelism(): raise jdk.virtualThreadScheduler.parallelism to allow more
+    public static synchronized boolean useVirtualThreads(int maxConcurrentTasks) {
+        if (!VirtualThreads.isSupported()) {
+            return false;
+        }
+        ExecutorService previous = executor;
+        virtual = true;
+        Scheduler.maxConcurrentTasks = maxConcurrentTasks;
+        resizePermits();
+        executor = VirtualThreads.newExecutor("Scheduler-virtual");
+        previous.shutdown();
+        return true;
+    }
+
+    // A running task releases the semaphore it acquired, replacing it only applies to the next tasks
+    static synchronized void resizePermits() {
+        if (!virtual) {
+            return;
+        }
+        int bound = maxConcurrentTasks;
+        if (bound <= 0) {
+            int poolSize = MySqlDB.getMaximumPoolSize();
+            bound = poolSize > 0 ? poolSize : 10;
+        }
+        permits = new Semaphore(Math.max(1, Math.min(bound, carrierParallelism())));
+    }
+
+    static int carrierParallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        try {
+            int parallelism = Integer.parseInt(System.getProperty("jdk.virtualThreadScheduler.parallelism", ""));
+            return parallelism > 0 ? parallelism : processors;
+        } catch (NumberFormatException exception) {
+            return processors;
+        }
     }
 
     public static void cancelTasks() {
@@ -0,0 +1,6 @@
+package fr.xilitra.mysqldb;
+
+public interface TransactionCallback<T> {
+
+    T run(SQLTransaction transaction) throws Exception;
+}
@@ -0,0 +1,23 @@
+package fr.xilitra.mysqldb;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ThreadFactory newThreadFactory(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21");
+    }
+
+    static ExecutorService newExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21");
+    }
+
+}
@@ -0,0 +1,43 @@
+package fr.xilitra.mysqldb;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class H2 {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private H2() {
+    }
+
+    // A fresh in-memory database per call, lower case names so the columns read back as they were declared.
+    // Health probes pass MySQL driver timeouts H2 does not know, they are ignored
+    static SQLConnection open(String name) {
+        String database = name + "-" + databases.incrementAndGet();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:" + database
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;IGNORE_UNKNOWN_SETTINGS=TRUE");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(4);
+
+        SQLConnection connection = new SQLConnection("localhost", "0", database, "sa", "");
+        connection.initConnection(config);
+        return connection;
+    }
+
+    static void createPlayers(SQLConnection connection, int rows) {
+        connection.execute("CREATE TABLE players (id INT PRIMARY KEY, name VARCHAR(64), coins BIGINT, version BIGINT)");
+        for (int id = 1; id <= rows; id++) {
+            connection.execute("INSERT INTO players (id, name, coins, version) VALUES (?, ?, ?, ?)",
+                    id, "player-" + id, id * 10L, 1L);
+        }
+    }
+
+    static long coins(SQLConnection connection, int id) {
+        SQLRowSet rowSet = connection.query("SELECT coins FROM players WHERE id = ?", id);
+        return rowSet.next() ? rowSet.getLong("coins") : -1;
+    }
+
+}
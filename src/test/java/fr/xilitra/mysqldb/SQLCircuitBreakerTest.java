@@ -0,0 +1,61 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SQLCircuitBreakerTest {
+
+    private SQLCircuitBreaker breaker;
+    private final AtomicBoolean serverUp = new AtomicBoolean();
+    private final AtomicInteger trials = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        this.breaker = new SQLCircuitBreaker("test");
+        this.breaker.setTrial(() -> {
+            this.trials.incrementAndGet();
+            return this.serverUp.get();
+        });
+    }
+
+    @Test
+    public void firstFailureOpensOnceTheTrialFails() throws Exception {
+        this.breaker.recordFailure();
+
+        this.awaitState(SQLCircuitBreaker.State.OPEN);
+        assertEquals(1, this.trials.get());
+        assertFalse(this.breaker.allowRequest());
+    }
+
+    @Test
+    public void callersFailFastUntilTheTrialPasses() throws Exception {
+        this.breaker.setOpenDuration(0, TimeUnit.MILLISECONDS);
+        this.breaker.recordFailure();
+        this.awaitState(SQLCircuitBreaker.State.OPEN);
+
+        // The caller hitting the end of the open period starts the trial, it does not run it
+        this.serverUp.set(true);
+        assertFalse(this.breaker.allowRequest());
+
+        this.awaitState(SQLCircuitBreaker.State.CLOSED);
+        assertTrue(this.breaker.allowRequest());
+        assertEquals(2, this.trials.get());
+    }
+
+    private void awaitState(SQLCircuitBreaker.State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.breaker.getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(state, this.breaker.getState());
+    }
+
+}
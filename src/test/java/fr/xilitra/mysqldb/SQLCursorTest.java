@@ -0,0 +1,63 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLCursorTest {
+
+    private SQLConnection connection;
+
+    @Before
+    public void setup() {
+        this.connection = H2.open("cursor");
+        H2.createPlayers(this.connection, 3);
+    }
+
+    @After
+    public void tearDown() {
+        this.connection.closeConnection();
+    }
+
+    @Test
+    public void readsEveryRowThenCloses() {
+        SQLCursor<Integer> cursor = this.connection.cursor("SELECT id FROM players ORDER BY id", resultSet -> resultSet.getInt("id"));
+        List<Integer> ids = new ArrayList<>();
+        while (cursor.hasNext()) {
+            ids.add(cursor.next());
+        }
+        assertEquals(3, ids.size());
+        assertTrue(cursor.isClosed());
+        assertFalse(cursor.isFailed());
+    }
+
+    @Test
+    public void failureMidStreamThrows() {
+        SQLCursor<Integer> cursor = this.connection.cursor("SELECT id FROM players ORDER BY id", resultSet -> {
+            int id = resultSet.getInt("id");
+            if (id == 2) {
+                throw new SQLException("row 2 is unreadable");
+            }
+            return id;
+        });
+        assertEquals(1, (int) cursor.next());
+        try {
+            cursor.hasNext();
+            fail("a failed read ended the cursor like a complete one");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof SQLException);
+        }
+        assertTrue(cursor.isClosed());
+        assertTrue(cursor.isFailed());
+    }
+
+}
@@ -0,0 +1,118 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private SQLExecutor executor;
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    // One worker parked on the latch and a queue of one already taken, the next submission overflows
+    private void fill(SQLExecutor.OverflowPolicy policy) throws InterruptedException {
+        this.executor = new SQLExecutor("test", 1, 1, policy);
+        CountDownLatch started = new CountDownLatch(1);
+        this.executor.submit(() -> {
+            started.countDown();
+            this.await(this.release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        this.executor.submit(() -> {
+        });
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void rejectThrowsWhenFull() throws Exception {
+        this.fill(SQLExecutor.OverflowPolicy.REJECT);
+        try {
+            this.executor.submit(() -> {
+            });
+            fail("A full REJECT executor accepted a task");
+        } catch (RejectedExecutionException expected) {
+            assertEquals(1, this.executor.getRejected());
+        }
+    }
+
+    @Test
+    public void dropOldestFailsTheDroppedTask() throws Exception {
+        this.executor = new SQLExecutor("test", 1, 1, SQLExecutor.OverflowPolicy.DROP_OLDEST);
+        CountDownLatch started = new CountDownLatch(1);
+        this.executor.submit(() -> {
+            started.countDown();
+            this.await(this.release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> oldest = new CompletableFuture<>();
+        this.executor.submit(() -> oldest.complete("ran"), oldest::completeExceptionally);
+        CompletableFuture<String> newest = new CompletableFuture<>();
+        this.executor.submit(() -> newest.complete("ran"), newest::completeExceptionally);
+
+        try {
+            oldest.get(5, TimeUnit.SECONDS);
+            fail("The dropped task ran");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+        this.release.countDown();
+        assertEquals("ran", newest.get(5, TimeUnit.SECONDS));
+        assertEquals(1, this.executor.getDropped());
+    }
+
+    @Test
+    public void blockWaitsForRoomFromOtherThreads() throws Exception {
+        this.fill(SQLExecutor.OverflowPolicy.BLOCK);
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> this.executor.submit(ran::countDown));
+        submitter.start();
+        // The submitter stays blocked as long as the worker holds the queue full
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+        this.release.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        submitter.join(5000);
+        assertEquals(1, this.executor.getBlocked());
+    }
+
+    @Test
+    public void blockRunsNestedSubmissionsOnTheWorker() throws Exception {
+        this.executor = new SQLExecutor("test", 1, 1, SQLExecutor.OverflowPolicy.BLOCK);
+        CountDownLatch done = new CountDownLatch(1);
+        this.executor.submit(() -> {
+            this.executor.submit(() -> {
+            });
+            // The queue is full and the only worker is this thread, waiting for room would never end
+            this.executor.submit(done::countDown);
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, this.executor.getCallerRuns());
+        assertEquals(0, this.executor.getBlocked());
+    }
+
+}
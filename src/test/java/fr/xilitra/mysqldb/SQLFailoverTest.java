@@ -0,0 +1,136 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SQLFailoverTest {
+
+    private static final AtomicInteger names = new AtomicInteger();
+
+    private String name;
+    private SQLConnection primary;
+    private SQLConnection standby;
+    private SQLFailover failover;
+
+    @Before
+    public void setup() {
+        this.name = "failover-" + names.incrementAndGet();
+        this.primary = H2.open("primary");
+        this.standby = H2.open("standby");
+        H2.createPlayers(this.primary, 1);
+        H2.createPlayers(this.standby, 1);
+        MySqlDB.register(this.name, this.primary);
+        this.failover = new SQLFailover(this.name, this.primary, this.standby);
+        this.failover.setFailureThreshold(1);
+    }
+
+    @After
+    public void tearDown() {
+        this.failover.stop();
+        if (this.primary.isConnected()) {
+            this.primary.closeConnection();
+        }
+        this.standby.closeConnection();
+    }
+
+    @Test
+    public void failoverAndFailbackSwapTheName() {
+        this.failover.failover();
+        assertTrue(this.failover.isFailedOver());
+        assertSame(this.standby, MySqlDB.getDB(this.name));
+        assertSame(this.standby, this.failover.getActive());
+
+        this.failover.failback();
+        assertFalse(this.failover.isFailedOver());
+        assertSame(this.primary, MySqlDB.getDB(this.name));
+    }
+
+    @Test
+    public void probeFailsOverOnlyWhenThePrimaryIsDown() {
+        this.failover.run();
+        assertFalse(this.failover.isFailedOver());
+
+        this.primary.closeConnection();
+        this.failover.run();
+
+        assertTrue(this.failover.isFailedOver());
+        assertSame(this.standby, MySqlDB.getDB(this.name));
+    }
+
+    @Test
+    public void pendingWriteBehindMovesToTheStandby() {
+        this.primary.enableWriteBehind(1, TimeUnit.HOURS);
+        TestPlayer player = new TestPlayer();
+        player.put("id", 1);
+        this.primary.getWriteBehind().markAdd(player, 1, "coins", 5);
+
+        this.failover.failover();
+
+        assertNull(this.primary.getWriteBehind());
+        assertEquals(1, this.standby.getWriteBehind().getPendingCount());
+        this.standby.flush();
+        assertEquals(15, H2.coins(this.standby, 1));
+        assertEquals(10, H2.coins(this.primary, 1));
+    }
+
+    @Test
+    public void shardedModelsWriteToTheStandby() throws Exception {
+        SQLModels<TestPlayer> players = new SQLModels<>(TestPlayer.class, new SQLShards(1, this.name));
+        TestPlayer player = players.get(1);
+        assertSame(this.primary, player.getConnection());
+        this.primary.enableWriteBehind(1, TimeUnit.HOURS);
+
+        this.failover.failover();
+        player.add("coins", 5);
+
+        assertSame(this.standby, player.getConnection());
+        assertEquals(1, this.standby.getWriteBehind().getPendingCount());
+        this.standby.flush();
+        assertEquals(15, H2.coins(this.standby, 1));
+        assertEquals(10, H2.coins(this.primary, 1));
+
+        this.failover.failback();
+        assertSame(this.primary, player.getConnection());
+    }
+
+    @Test
+    public void queuedMicroBatchesRunOnTheStandby() throws Exception {
+        this.primary.enableMicroBatching(1, TimeUnit.HOURS, 100);
+        CompletableFuture<Integer> update = this.primary.executeAsync("UPDATE players SET coins = ? WHERE id = ?", 99L, 1);
+
+        this.failover.failover();
+
+        assertNull(this.primary.getMicroBatcher());
+        assertEquals(1, this.standby.getMicroBatcher().getQueuedCount());
+        this.standby.flush();
+        assertEquals(1, (int) update.get(5, TimeUnit.SECONDS));
+        assertEquals(99, H2.coins(this.standby, 1));
+        assertEquals(10, H2.coins(this.primary, 1));
+    }
+
+    @Test
+    public void queryCacheIsEmptiedAndFollowsTheTraffic() {
+        this.primary.enableQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        SQLQueryCache cache = this.primary.getQueryCache();
+        assertEquals(10, H2.coins(this.primary, 1));
+        assertEquals(1, cache.size());
+
+        this.failover.failover();
+
+        assertNull(this.primary.getQueryCache());
+        assertSame(cache, this.standby.getQueryCache());
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,128 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLLoadDataStreamTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void specialBytesAreEscaped() throws IOException {
+        String value = "a\0b\tc\nd\re\\f\u001Ag";
+
+        assertEquals("a\\0b\\tc\\nd\\re\\\\f\\Zg\n", encode(UTC, new Object[]{value}));
+        assertEquals("\\\\N\n", encode(UTC, new Object[]{"\\N"}));
+    }
+
+    @Test
+    public void nullIsWrittenAsBackslashN() throws IOException {
+        assertEquals("1\t\\N\tx\n", encode(UTC, new Object[]{1, null, "x"}));
+    }
+
+    @Test
+    public void numbersBooleansAndBytes() throws IOException {
+        Object[] row = {new BigDecimal("1E+3"), new BigDecimal("-0.050"), true, false, 42L, "\u00e9".getBytes(StandardCharsets.UTF_8)};
+
+        assertEquals("1000\t-0.050\t1\t0\t42\t\u00e9\n", encode(UTC, row));
+    }
+
+    @Test
+    public void datesAreTheWallClockOfTheZone() throws IOException {
+        Timestamp timestamp = new Timestamp(0);
+        timestamp.setNanos(123456000);
+        Timestamp whole = new Timestamp(60000);
+        // +05:30, a zone that is neither UTC nor the usual JVM default
+        TimeZone kolkata = TimeZone.getTimeZone("Asia/Kolkata");
+
+        assertEquals("1970-01-01 05:30:00.123456\t1970-01-01 05:31:00\t1970-01-01 05:30:01.5\n",
+                encode(kolkata, new Object[]{timestamp, whole, new java.util.Date(1500)}));
+        assertEquals("1970-01-01 00:00:00.123456\n", encode(UTC, new Object[]{timestamp}));
+    }
+
+    @Test
+    public void rowLargerThanTheBufferIsWrittenWhole() throws IOException {
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        List<Object[]> rows = Arrays.asList(new Object[]{"small"}, new Object[]{large}, new Object[]{"\t" + large});
+
+        String expected = "small\n" + large + "\n\\t" + large + "\n";
+        assertEquals(expected, readAll(new SQLLoadDataStream(rows.iterator(), 1, 0, UTC, 64), 7));
+        assertEquals(expected, readOneByOne(new SQLLoadDataStream(rows.iterator(), 1, 0, UTC, 64)));
+    }
+
+    @Test
+    public void maxRowsCutsBetweenStatements() throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            rows.add(new Object[]{i, "row-" + i});
+        }
+        Iterator<Object[]> iterator = rows.iterator();
+
+        SQLLoadDataStream first = new SQLLoadDataStream(iterator, 2, 2, UTC);
+        assertEquals("1\trow-1\n2\trow-2\n", readAll(first, 1024));
+        assertEquals(2, first.getEncodedRows());
+
+        SQLLoadDataStream second = new SQLLoadDataStream(iterator, 2, 2, UTC);
+        assertEquals("3\trow-3\n4\trow-4\n", readAll(second, 1024));
+
+        SQLLoadDataStream last = new SQLLoadDataStream(iterator, 2, 2, UTC);
+        assertEquals("5\trow-5\n", readAll(last, 1024));
+        assertEquals(1, last.getEncodedRows());
+        assertFalse(iterator.hasNext());
+        assertEquals(-1, last.read());
+    }
+
+    @Test
+    public void wrongColumnCountFails() {
+        SQLLoadDataStream stream = new SQLLoadDataStream(Collections.singletonList(new Object[]{1, 2, 3}).iterator(), 2, 0, UTC);
+        try {
+            stream.read();
+            fail("a row with 3 values was encoded for 2 columns");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("3 values"));
+        }
+    }
+
+    private static String encode(TimeZone timeZone, Object[] row) throws IOException {
+        return readAll(new SQLLoadDataStream(Collections.singletonList(row).iterator(), row.length, 0, timeZone), 1024);
+    }
+
+    private static String readAll(InputStream stream, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[chunk];
+        int read;
+        while ((read = stream.read(bytes, 0, bytes.length)) != -1) {
+            out.write(bytes, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String readOneByOne(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = stream.read()) != -1) {
+            out.write(b);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
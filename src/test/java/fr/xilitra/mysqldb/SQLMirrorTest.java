@@ -0,0 +1,102 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLMirrorTest {
+
+    private SQLConnection connection;
+    private SQLModels<TestPlayer> players;
+    private SQLMirror<TestPlayer> mirror;
+
+    @Before
+    public void setup() throws Exception {
+        this.connection = H2.open("mirror");
+        H2.createPlayers(this.connection, 3);
+        MySqlDB.register("mirror", this.connection);
+        MySqlDB.selectDB("mirror");
+        this.players = new SQLModels<>(TestPlayer.class);
+        this.mirror = this.players.mirror("version")
+                .hashIndex("name")
+                .sortedIndex("coins")
+                .fullReloadEvery(0);
+        assertTrue(this.mirror.reload());
+    }
+
+    @After
+    public void tearDown() {
+        this.players.disableMirror();
+        this.connection.closeConnection();
+    }
+
+    @Test
+    public void readsComeFromTheIndexes() {
+        assertEquals(3, this.mirror.size());
+        assertEquals(20L, this.mirror.get(2).getLong("coins"));
+        assertEquals(1, this.mirror.find("name", "player-3").size());
+        List<TestPlayer> range = this.mirror.range("coins", 10L, 30L);
+        assertEquals(2, range.size());
+        assertEquals(1, range.get(0).getInt("id"));
+        assertEquals(2, range.get(1).getInt("id"));
+    }
+
+    @Test
+    public void refreshPicksUpNewerVersions() {
+        this.connection.execute("UPDATE players SET coins = ?, version = ? WHERE id = ?", 500L, 2L, 1);
+        this.connection.execute("INSERT INTO players (id, name, coins, version) VALUES (?, ?, ?, ?)", 4, "player-4", 40L, 2L);
+
+        assertTrue(this.mirror.refresh());
+
+        assertEquals(4, this.mirror.size());
+        assertEquals(500L, this.mirror.get(1).getLong("coins"));
+        assertEquals(1, this.mirror.find("name", "player-4").size());
+        assertEquals(2, this.mirror.range("coins", 40L, null).size());
+        assertEquals(2, this.mirror.getRefreshedRows());
+        assertEquals(1, this.mirror.getRefreshCount());
+    }
+
+    @Test
+    public void refreshPicksUpChangesAtTheSameVersion() {
+        this.connection.execute("UPDATE players SET coins = ? WHERE id = ?", 700L, 2);
+
+        assertTrue(this.mirror.refresh());
+
+        assertEquals(700L, this.mirror.get(2).getLong("coins"));
+        assertEquals(1, this.mirror.range("coins", 700L, null).size());
+        assertEquals(1, this.mirror.getRefreshedRows());
+    }
+
+    @Test
+    public void deletedRowsLeaveOnTheFullReload() {
+        this.mirror.fullReloadEvery(2);
+        this.connection.execute("DELETE FROM players WHERE id = ?", 3);
+
+        assertTrue(this.mirror.refresh());
+        assertEquals(3, this.mirror.size());
+        assertTrue(this.mirror.refresh());
+        assertEquals(2, this.mirror.size());
+        assertNull(this.mirror.get(3));
+        assertEquals(2, this.mirror.getReloadCount());
+    }
+
+    @Test
+    public void readersGetTheirOwnCopy() {
+        TestPlayer first = this.mirror.get(1);
+        TestPlayer second = this.players.get(1);
+        assertNotSame(first, second);
+
+        first.put("coins", 0L);
+
+        assertEquals(10L, this.mirror.get(1).getLong("coins"));
+        assertEquals(10L, this.mirror.find("name", "player-1").get(0).getLong("coins"));
+    }
+
+}
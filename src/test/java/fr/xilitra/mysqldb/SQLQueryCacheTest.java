@@ -0,0 +1,185 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLQueryCacheTest {
+
+    private static final String SELECT = "SELECT coins FROM players WHERE id = ?";
+
+    private SQLConnection connection;
+
+    @Before
+    public void setup() {
+        this.connection = H2.open("query-cache");
+        H2.createPlayers(this.connection, 2);
+    }
+
+    @After
+    public void tearDown() {
+        this.connection.closeConnection();
+    }
+
+    @Test
+    public void repeatedReadIsServedFromTheCache() {
+        this.connection.enableQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        SQLQueryCache cache = this.connection.getQueryCache();
+
+        assertEquals(10, H2.coins(this.connection, 1));
+        assertEquals(10, H2.coins(this.connection, 1));
+        assertEquals(20, H2.coins(this.connection, 2));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void writeInvalidatesReadsOfItsTable() {
+        this.connection.enableQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        SQLQueryCache cache = this.connection.getQueryCache();
+
+        assertEquals(10, H2.coins(this.connection, 1));
+        this.connection.execute("UPDATE players SET coins = ? WHERE id = ?", 99L, 1);
+
+        assertEquals(99, H2.coins(this.connection, 1));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void writeInsideATransactionInvalidatesOnCommit() throws Exception {
+        this.connection.enableQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+
+        assertEquals(10, H2.coins(this.connection, 1));
+        this.connection.inTransaction(transaction -> {
+            transaction.execute("UPDATE players SET coins = ? WHERE id = ?", 99L, 1);
+            return null;
+        });
+
+        assertEquals(99, H2.coins(this.connection, 1));
+    }
+
+    @Test
+    public void everyTableOfAJoinIsTracked() {
+        assertArrayEquals(new String[]{"a", "b"}, sorted(SQLQueryCache.readTables("SELECT * FROM a x, `db`.`b` AS y WHERE x.id = y.id")));
+        assertArrayEquals(new String[]{"a", "b"}, sorted(SQLQueryCache.readTables("SELECT * FROM a JOIN b ON a.id = b.id")));
+        assertArrayEquals(new String[]{"a", "b"}, sorted(SQLQueryCache.writeTables("UPDATE a JOIN b ON a.id = b.id SET a.x = b.x")));
+        assertArrayEquals(new String[]{"a", "b"}, sorted(SQLQueryCache.writeTables("UPDATE a, b SET a.x = 1")));
+        assertArrayEquals(new String[]{"players"}, SQLQueryCache.writeTables("UPDATE players SET coins = ? WHERE id = ?"));
+        // The tables a multi-table delete writes to are not parsed, the whole cache goes
+        assertNull(SQLQueryCache.writeTables("DELETE FROM a, b USING a JOIN b ON a.id = b.id"));
+    }
+
+    @Test
+    public void writeToTheSecondTableOfACommaJoinInvalidates() {
+        this.connection.execute("CREATE TABLE bonuses (id INT PRIMARY KEY, amount BIGINT)");
+        this.connection.execute("INSERT INTO bonuses (id, amount) VALUES (?, ?)", 1, 1L);
+        this.connection.enableQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        String join = "SELECT p.coins + b.amount AS total FROM players p, bonuses b WHERE p.id = b.id AND p.id = ?";
+
+        SQLRowSet before = this.connection.query(join, 1);
+        assertTrue(before.next());
+        assertEquals(11, before.getLong("total"));
+        this.connection.execute("UPDATE bonuses SET amount = ? WHERE id = ?", 5L, 1);
+
+        SQLRowSet after = this.connection.query(join, 1);
+        assertTrue(after.next());
+        assertEquals(15, after.getLong("total"));
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        SQLRowSet rowSet = this.connection.query(SELECT, 1);
+        SQLQueryCache cache = new SQLQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<SQLRowSet> loader = () -> {
+            loads.incrementAndGet();
+            this.await(release);
+            return rowSet;
+        };
+
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SQLRowSet>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(readers.submit(() -> cache.get(SELECT, new Object[]{1}, loader)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.getCoalesced() < 7 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<SQLRowSet> result : results) {
+                SQLRowSet view = result.get(5, TimeUnit.SECONDS);
+                assertTrue(view.next());
+                assertEquals(10, view.getLong("coins"));
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(7, cache.getCoalesced());
+    }
+
+    @Test
+    public void resultLoadedAcrossAWriteIsNotKept() throws Exception {
+        SQLRowSet rowSet = this.connection.query(SELECT, 1);
+        SQLQueryCache cache = new SQLQueryCache(1 << 20, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> cache.get(SELECT, new Object[]{1}, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            this.await(release);
+            return rowSet;
+        }));
+        reader.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // The row may have changed after the reader saw it, its result must not be served later
+        cache.invalidate("UPDATE players SET coins = 0 WHERE id = 1");
+        release.countDown();
+        reader.join(5000);
+
+        cache.get(SELECT, new Object[]{1}, () -> {
+            loads.incrementAndGet();
+            return rowSet;
+        });
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    private static String[] sorted(String[] tables) {
+        String[] copy = tables.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
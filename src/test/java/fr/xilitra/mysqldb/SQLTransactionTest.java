@@ -0,0 +1,114 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLTransactionTest {
+
+    private SQLConnection connection;
+
+    @Before
+    public void setup() {
+        this.connection = H2.open("transaction");
+        H2.createPlayers(this.connection, 1);
+    }
+
+    @After
+    public void tearDown() {
+        this.connection.closeConnection();
+    }
+
+    private void insert(SQLTransaction transaction, int id) {
+        transaction.execute("INSERT INTO players (id, name, coins, version) VALUES (?, ?, ?, ?)", id, "player-" + id, 0L, 1L);
+    }
+
+    @Test
+    public void commitsAndReturnsTheResult() throws Exception {
+        String result = this.connection.inTransaction(transaction -> {
+            this.insert(transaction, 2);
+            transaction.execute("UPDATE players SET coins = coins + ? WHERE id = ?", 5L, 1);
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(0, H2.coins(this.connection, 2));
+        assertEquals(15, H2.coins(this.connection, 1));
+    }
+
+    @Test
+    public void failedStatementRollsBackAndThrows() throws Exception {
+        try {
+            this.connection.inTransaction(transaction -> {
+                this.insert(transaction, 2);
+                // Duplicate primary key, the statement fails and the whole transaction must go
+                this.insert(transaction, 1);
+                return "done";
+            });
+            fail("inTransaction returned after a rollback");
+        } catch (SQLException expected) {
+            assertNotNull(expected.getCause());
+            assertTrue(expected.getCause() instanceof SQLException);
+        }
+        assertEquals(-1, H2.coins(this.connection, 2));
+    }
+
+    @Test
+    public void rollbackOnlyThrows() throws Exception {
+        try {
+            this.connection.inTransaction(transaction -> {
+                this.insert(transaction, 2);
+                transaction.setRollbackOnly();
+                return "done";
+            });
+            fail("inTransaction returned after a rollback");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().contains("rollback-only"));
+        }
+        assertEquals(-1, H2.coins(this.connection, 2));
+    }
+
+    @Test
+    public void exceptionFromTheWorkRollsBack() throws Exception {
+        IllegalStateException thrown = new IllegalStateException("work failed");
+        try {
+            this.connection.inTransaction(transaction -> {
+                this.insert(transaction, 2);
+                throw thrown;
+            });
+            fail("inTransaction swallowed the exception");
+        } catch (IllegalStateException expected) {
+            assertSame(thrown, expected);
+        }
+        assertEquals(-1, H2.coins(this.connection, 2));
+    }
+
+    @Test
+    public void nestedCallJoinsTheOuterTransaction() throws Exception {
+        try {
+            this.connection.inTransaction(outer -> {
+                this.insert(outer, 2);
+                this.connection.inTransaction(inner -> {
+                    assertSame(outer, inner);
+                    this.insert(inner, 3);
+                    return null;
+                });
+                outer.setRollbackOnly();
+                return null;
+            });
+            fail("inTransaction returned after a rollback");
+        } catch (SQLException expected) {
+            assertEquals(-1, H2.coins(this.connection, 2));
+            assertEquals(-1, H2.coins(this.connection, 3));
+        }
+    }
+
+}
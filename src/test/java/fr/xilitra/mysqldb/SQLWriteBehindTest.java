@@ -0,0 +1,111 @@
+package fr.xilitra.mysqldb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SQLWriteBehindTest {
+
+    private SQLConnection connection;
+    private SQLWriteBehind writeBehind;
+    private TestPlayer player;
+
+    @Before
+    public void setup() {
+        this.connection = H2.open("write-behind");
+        H2.createPlayers(this.connection, 1);
+        // The period never elapses during a test, every flush below is explicit
+        this.connection.enableWriteBehind(1, TimeUnit.HOURS);
+        this.writeBehind = this.connection.getWriteBehind();
+        this.player = new TestPlayer();
+        this.player.put("id", 1);
+    }
+
+    @After
+    public void tearDown() {
+        this.connection.closeConnection();
+    }
+
+    @Test
+    public void flushWritesBufferedUpdates() {
+        this.writeBehind.markSet(this.player, 1, "name", "renamed");
+        this.writeBehind.markAdd(this.player, 1, "coins", 5);
+        this.writeBehind.markAdd(this.player, 1, "coins", 7);
+
+        assertTrue(this.writeBehind.flush());
+        assertEquals(0, this.writeBehind.getPendingCount());
+        assertEquals(22, H2.coins(this.connection, 1));
+        SQLRowSet rowSet = this.connection.query("SELECT name FROM players WHERE id = ?", 1);
+        assertTrue(rowSet.next());
+        assertEquals("renamed", rowSet.getString("name"));
+    }
+
+    @Test
+    public void copiesOfOneRowMergeIntoOneUpdate() {
+        TestPlayer copy = new TestPlayer();
+        copy.put("id", 1L);
+
+        this.writeBehind.markSet(this.player, 1, "name", "first");
+        this.writeBehind.markAdd(this.player, 1, "coins", 5);
+        this.writeBehind.markSet(copy, 1L, "name", "second");
+        this.writeBehind.markAdd(copy, 1L, "coins", 7);
+
+        assertEquals(1, this.writeBehind.getPendingCount());
+        assertTrue(this.writeBehind.flush());
+        assertEquals(22, H2.coins(this.connection, 1));
+        SQLRowSet rowSet = this.connection.query("SELECT name FROM players WHERE id = ?", 1);
+        assertTrue(rowSet.next());
+        assertEquals("second", rowSet.getString("name"));
+    }
+
+    @Test
+    public void deltaOnASetColumnAddsToThePendingValue() {
+        TestPlayer copy = new TestPlayer();
+        copy.put("id", 1);
+
+        this.writeBehind.markSet(this.player, 1, "coins", 100L);
+        this.writeBehind.markAdd(copy, 1, "coins", 5);
+
+        assertTrue(this.writeBehind.flush());
+        assertEquals(105, H2.coins(this.connection, 1));
+    }
+
+    @Test
+    public void failedFlushKeepsUpdatesForRetry() {
+        this.writeBehind.markAdd(this.player, 1, "coins", 5);
+        this.connection.execute("ALTER TABLE players RENAME TO players_offline");
+
+        assertFalse(this.writeBehind.flush());
+        assertEquals(1, this.writeBehind.getPendingCount());
+
+        // Made while the flush was failing, it adds to the requeued delta instead of replacing it
+        this.writeBehind.markAdd(this.player, 1, "coins", 2);
+        this.connection.execute("ALTER TABLE players_offline RENAME TO players");
+
+        assertTrue(this.writeBehind.flush());
+        assertEquals(0, this.writeBehind.getPendingCount());
+        assertEquals(17, H2.coins(this.connection, 1));
+    }
+
+    @Test
+    public void stopReturnsUnwrittenModels() {
+        this.writeBehind.markAdd(this.player, 1, "coins", 5);
+        this.connection.execute("ALTER TABLE players RENAME TO players_offline");
+
+        List<SQLModel> unwritten = this.connection.disableWriteBehind();
+
+        assertEquals(1, unwritten.size());
+        assertSame(this.player, unwritten.get(0));
+        this.connection.execute("ALTER TABLE players_offline RENAME TO players");
+        assertEquals(10, H2.coins(this.connection, 1));
+    }
+
+}
@@ -0,0 +1,9 @@
+package fr.xilitra.mysqldb;
+
+public class TestPlayer extends SQLModel {
+
+    public TestPlayer() {
+        super("players", "id");
+    }
+
+}